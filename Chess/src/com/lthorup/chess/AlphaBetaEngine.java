@@ -0,0 +1,31 @@
+package com.lthorup.chess;
+
+import java.util.ArrayList;
+
+//-------------------------------------------------------
+// The minimax search of ChessBoard.aiBestMoves as a search engine.
+// Ties between equally good moves are broken at random.
+public class AlphaBetaEngine implements SearchEngine {
+
+	private final int depth;
+
+	//---------------------------------------------------
+	public AlphaBetaEngine(int depth) {
+		this.depth = depth;
+	}
+	//---------------------------------------------------
+	@Override
+	public ChessMove chooseMove(ChessBoard board) {
+		if (board.isDraw())
+			return null;
+		ArrayList<ChessBoard> bestMoves = board.aiBestMoves(depth);
+		if (bestMoves.size() == 0)
+			return null;
+		return board.moveTo(bestMoves.get((int)(Math.random() * bestMoves.size())));
+	}
+	//---------------------------------------------------
+	@Override
+	public String toString() {
+		return "Alpha-beta";
+	}
+}
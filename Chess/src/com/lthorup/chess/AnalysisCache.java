@@ -0,0 +1,228 @@
+package com.lthorup.chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+//-------------------------------------------------------
+// Disk backed cache of root search results (score, depth and best
+// move by position key) that survives restarts.
+//
+// The live table is kept on the heap. A background thread copies it
+// into a memory mapped file when the engine has been idle for a moment,
+// followed by a header holding a CRC of the entries. A file whose CRC
+// doesn't match (for example after a crash during a write) is discarded.
+// The header also holds a fingerprint of the evaluation and search
+// settings the results came from, and a file written with different
+// settings is discarded as well, since its scores and moves are stale.
+//
+// The table has a fixed number of two entry buckets. A new result
+// replaces the same position if it is at least as deep, otherwise the
+// entry from the oldest session, or the shallower one, is evicted.
+//
+// File layout (native long order):
+//   int magic, int version, int entries, int generation, long crc, long fingerprint
+//   entries * (long key, long data)
+// data = score (32 bits) | move (16 bits) | depth (8 bits) | generation (8 bits)
+public class AnalysisCache implements Closeable {
+
+	static final int MAGIC = 0x43414348;   // "CACH"
+	static final int VERSION = 2;
+	static final int HEADER = 32;
+	static final long IDLE_MILLIS = 1000;  // time without stores before writing back
+
+	//---------------------------------------------------
+	// a cached search result
+	public static class Entry {
+		public final int score;   // for the player to move
+		public final int depth;
+		public final ChessMove move;
+		Entry(int score, int depth, ChessMove move) { this.score = score; this.depth = depth; this.move = move; }
+	}
+
+	private final FileChannel channel;
+	private final MappedByteBuffer mapped;
+	private final long[] keys;
+	private final long[] data;
+	private final int mask;
+	private final int generation;
+	private final long fingerprint;
+	private boolean dirty = false;
+	private long lastStore = 0;
+	private final ScheduledExecutorService writer;
+
+	//---------------------------------------------------
+	// open (or create) a cache file that uses at most the given number of
+	// bytes, for results of the evaluation with the given fingerprint
+	public AnalysisCache(Path path, int bytes, long fingerprint) throws IOException {
+		this.fingerprint = fingerprint;
+		int entries = Integer.highestOneBit(Math.max((bytes - HEADER) / 16, 2));
+		keys = new long[entries];
+		data = new long[entries];
+		mask = entries - 1;
+
+		channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		boolean existing = channel.size() == HEADER + 16L * entries;
+		mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + 16L * entries);
+		mapped.order(ByteOrder.nativeOrder());
+
+		int previousGeneration = 0;
+		if (existing && mapped.getInt(0) == MAGIC && mapped.getInt(4) == VERSION && mapped.getInt(8) == entries) {
+			if (mapped.getLong(24) != fingerprint)
+				System.err.println(path + ": evaluation changed, starting with an empty analysis cache");
+			else if (mapped.getLong(16) == checksum()) {
+				previousGeneration = mapped.getInt(12);
+				LongBuffer longs = entryBuffer();
+				for (int i = 0; i < entries; i++) {
+					keys[i] = longs.get();
+					data[i] = longs.get();
+				}
+			}
+			else
+				System.err.println(path + ": checksum mismatch, starting with an empty analysis cache");
+		}
+		generation = previousGeneration + 1;
+
+		writer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "analysis cache writer");
+			t.setDaemon(true);
+			return t;
+		});
+		writer.scheduleWithFixedDelay(this::writeIfIdle, IDLE_MILLIS, IDLE_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	//---------------------------------------------------
+	// look up a position, returns null if it isn't cached
+	public synchronized Entry probe(long key) {
+		int i = (int)key & mask & ~1;
+		for (int j = i; j <= i + 1; j++) {
+			long d = data[j];
+			if (keys[j] == key && d != 0)
+				return new Entry((int)(d >> 32), (int)(d >> 8) & 0xff, unpackMove((int)(d >> 16) & 0xffff));
+		}
+		return null;
+	}
+	//---------------------------------------------------
+	// store a search result
+	public synchronized void store(long key, int score, int depth, ChessMove move) {
+		int i = (int)key & mask & ~1;
+		int slot = -1;
+		for (int j = i; j <= i + 1; j++) {
+			if (keys[j] == key && data[j] != 0) {
+				if (depth < depth(j))
+					return;
+				slot = j;
+			}
+		}
+		if (slot < 0)
+			slot = worse(i, i + 1);
+		keys[slot] = key;
+		data[slot] = ((long)score << 32) | ((long)packMove(move) << 16) | ((depth & 0xff) << 8) | (generation & 0xff);
+		dirty = true;
+		lastStore = System.currentTimeMillis();
+	}
+	//---------------------------------------------------
+	// pick the entry to evict: empty, then oldest session, then shallowest
+	private int worse(int a, int b) {
+		if (data[a] == 0)
+			return a;
+		if (data[b] == 0)
+			return b;
+		int ageA = (generation - (int)data[a]) & 0xff;
+		int ageB = (generation - (int)data[b]) & 0xff;
+		if (ageA != ageB)
+			return ageA > ageB ? a : b;
+		return depth(a) <= depth(b) ? a : b;
+	}
+	private int depth(int i) {
+		return (int)(data[i] >> 8) & 0xff;
+	}
+
+	//---------------------------------------------------
+	// write the table to the file if it changed and the engine is idle
+	private void writeIfIdle() {
+		boolean idle;
+		synchronized (this) {
+			idle = dirty && System.currentTimeMillis() - lastStore >= IDLE_MILLIS;
+		}
+		if (idle)
+			flush();
+	}
+	//---------------------------------------------------
+	// write the table and its checksum to the file
+	public void flush() {
+		synchronized (this) {
+			if (!dirty)
+				return;
+			// invalidate the header first so a crash mid-write is detected
+			mapped.putInt(0, 0);
+			LongBuffer longs = entryBuffer();
+			for (int i = 0; i < keys.length; i++) {
+				longs.put(keys[i]);
+				longs.put(data[i]);
+			}
+			mapped.putInt(4, VERSION);
+			mapped.putInt(8, keys.length);
+			mapped.putInt(12, generation);
+			mapped.putLong(16, checksum());
+			mapped.putLong(24, fingerprint);
+			mapped.putInt(0, MAGIC);
+			dirty = false;
+		}
+		mapped.force();
+	}
+	//---------------------------------------------------
+	@Override
+	public void close() throws IOException {
+		writer.shutdownNow();
+		flush();
+		channel.close();
+	}
+
+	//---------------------------------------------------
+	// fingerprint of everything a cached result depends on: the evaluation
+	// weights, the checkmate score, the NNUE network and the search depth
+	public static long fingerprint(int searchDepth) {
+		long h = searchDepth;
+		for (int w : EvalParams.weights())
+			h = h * 31 + w;
+		h = h * 31 + ChessBoard.CHECKMATE_VALUE;
+		Nnue net = ChessBoard.nnue;
+		h = h * 31 + (net != null ? net.fingerprint() : 0);
+		return h;
+	}
+
+	//---------------------------------------------------
+	private LongBuffer entryBuffer() {
+		mapped.position(HEADER);
+		LongBuffer longs = mapped.slice().order(ByteOrder.nativeOrder()).asLongBuffer();
+		mapped.position(0);
+		return longs;
+	}
+	private long checksum() {
+		CRC32 crc = new CRC32();
+		mapped.position(HEADER);
+		crc.update(mapped.slice());
+		mapped.position(0);
+		return crc.getValue();
+	}
+	//---------------------------------------------------
+	// moves are packed as from x, from y, to x, to y (3 bits each) plus a valid bit
+	static int packMove(ChessMove m) {
+		return 0x8000 | m.from.x | (m.from.y << 3) | (m.to.x << 6) | (m.to.y << 9);
+	}
+	static ChessMove unpackMove(int p) {
+		if ((p & 0x8000) == 0)
+			return null;
+		return new ChessMove(new ChessLocation(p & 7, (p >> 3) & 7), new ChessLocation((p >> 6) & 7, (p >> 9) & 7));
+	}
+}
@@ -1,6 +1,7 @@
 package com.lthorup.chess;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 //-------------------------------------------------------
 // This class represents a chess game board and is also
@@ -14,8 +15,16 @@ public class ChessBoard {
 	private ChessBoard[] children;
 	private ChessLocation whiteKing, blackKing;
 	private ArrayList<ChessMove> validMoves;
+	private int[] exchange;   // static exchange value of each valid move once ordered (0 for quiet moves)
 	private int value;
 	private ChessPiece movedPiece;
+	private long hash;        // zobrist key of this position
+	private long pawnHash;    // zobrist key of the pawns only
+	private Nnue.Accumulator accumulator;   // only used with the NNUE evaluator
+	private int searchScore;  // score of the last search from this board, for the player to move
+	private int halfmoveClock;        // plies since the last capture or pawn move
+	private PositionHistory history;  // keys of the game and search path, shared by the whole tree
+	private ChessMove move;           // move that created this board (null for a starting board)
 	
 	//---------------------------------------------------
 	// valid move directions/offsets for piece types
@@ -38,6 +47,12 @@ public class ChessBoard {
 	public ChessBoard(ChessColor color) {
 		this.color = color; // color whose move created this board
 		newGame();
+		hash = Zobrist.hash(this);
+		pawnHash = Zobrist.pawnHash(this);
+		history = new PositionHistory();
+		history.push(hash);
+		if (nnue != null)
+			accumulator = nnue.refresh(this);
 		validMoves = validMoves(color.opposite());
 		evaluate();
 	}
@@ -45,17 +60,135 @@ public class ChessBoard {
 	// create next move board based on parent board and move
 	public ChessBoard(ChessBoard parent, ChessMove move) {
 		color = parent.color.opposite();
+		this.move = move;
 		board = new ChessPiece[8][8];
 		for (int y = 0; y < 8; y++)
 			for (int x = 0; x < 8; x++)
 				board[x][y] = parent.board[x][y];
 		whiteKing = parent.whiteKing;
 		blackKing = parent.blackKing;
-		makeMove(move);
+		ChessPiece moving = get(move.from);
+		ChessPiece captured = makeMove(move);
+		hash = parent.hash ^ Zobrist.SIDE ^ Zobrist.piece(moving, move.from) ^ Zobrist.piece(captured, move.to) ^ Zobrist.piece(get(move.to), move.to);
+		pawnHash = parent.pawnHash ^ Zobrist.pawn(moving, move.from) ^ Zobrist.pawn(captured, move.to) ^ Zobrist.pawn(get(move.to), move.to);
+		if (nnue != null)
+			accumulator = parent.accumulator != null ? nnue.update(parent.accumulator, moving, captured, get(move.to), move.from, move.to) : nnue.refresh(this);
+		stats.nodes.increment();
+		history = parent.history;
+		boolean pawnMove = moving == ChessPiece.WhitePawn || moving == ChessPiece.BlackPawn;
+		halfmoveClock = (pawnMove || captured != ChessPiece.Empty) ? 0 : parent.halfmoveClock + 1;
 		validMoves = validMoves(color.opposite());
 		evaluate();
 	}
 	//---------------------------------------------------
+	// create a board from a FEN position. Castling and en passant
+	// fields are ignored since this engine doesn't support them.
+	public ChessBoard(String fen) {
+		String[] fields = fen.trim().split("\\s+");
+		String[] ranks = fields[0].split("/");
+		if (ranks.length != 8)
+			throw new IllegalArgumentException("bad FEN: " + fen);
+		for (int y = 0; y < 8; y++) {
+			int x = 0;
+			for (char c : ranks[y].toCharArray()) {
+				if (c >= '1' && c <= '8') {
+					for (int n = c - '0'; n > 0 && x < 8; n--)
+						board[x++][y] = ChessPiece.Empty;
+				}
+				else {
+					ChessPiece piece = ChessPiece.fromFen(c);
+					if (piece == null || x >= 8)
+						throw new IllegalArgumentException("bad FEN: " + fen);
+					if (piece == ChessPiece.WhiteKing)
+						whiteKing = new ChessLocation(x, y);
+					else if (piece == ChessPiece.BlackKing)
+						blackKing = new ChessLocation(x, y);
+					board[x++][y] = piece;
+				}
+			}
+			if (x != 8)
+				throw new IllegalArgumentException("bad FEN: " + fen);
+		}
+		if (whiteKing == null || blackKing == null)
+			throw new IllegalArgumentException("FEN is missing a king: " + fen);
+
+		// color is the side that made the last move, not the side to move
+		boolean whiteToMove = fields.length < 2 || fields[1].equals("w");
+		color = whiteToMove ? ChessColor.Black : ChessColor.White;
+		if (fields.length > 4) {
+			try {
+				halfmoveClock = Integer.parseInt(fields[4]);
+			}
+			catch (NumberFormatException e) {
+				throw new IllegalArgumentException("bad FEN: " + fen);
+			}
+		}
+		hash = Zobrist.hash(this);
+		pawnHash = Zobrist.pawnHash(this);
+		history = new PositionHistory();
+		history.push(hash);
+		if (nnue != null)
+			accumulator = nnue.refresh(this);
+		validMoves = validMoves(color.opposite());
+		evaluate();
+	}
+	//---------------------------------------------------
+	// get the FEN string for this board
+	public String toFen() {
+		StringBuilder sb = new StringBuilder();
+		for (int y = 0; y < 8; y++) {
+			int empty = 0;
+			for (int x = 0; x < 8; x++) {
+				ChessPiece piece = board[x][y];
+				if (piece == ChessPiece.Empty)
+					empty++;
+				else {
+					if (empty > 0)
+						sb.append(empty);
+					empty = 0;
+					sb.append(piece.fen());
+				}
+			}
+			if (empty > 0)
+				sb.append(empty);
+			if (y < 7)
+				sb.append('/');
+		}
+		sb.append(color == ChessColor.Black ? " w" : " b");
+		sb.append(" - - ").append(halfmoveClock).append(" 1");
+		return sb.toString();
+	}
+	//---------------------------------------------------
+	// color of the player whose turn it is on this board
+	public ChessColor sideToMove() {
+		return color.opposite();
+	}
+	//---------------------------------------------------
+	// zobrist key of this position
+	public long hash() {
+		return hash;
+	}
+	//---------------------------------------------------
+	// score of the last AI search from this board, from the point of view of the player to move
+	public int searchScore() {
+		return searchScore;
+	}
+	//---------------------------------------------------
+	// static evaluation of this board (centipawns, from white's point of view)
+	int value() {
+		return value;
+	}
+	//---------------------------------------------------
+	// plies since the last capture or pawn move
+	public int halfmoveClock() {
+		return halfmoveClock;
+	}
+	//---------------------------------------------------
+	// valid moves for the player whose turn it is
+	public ArrayList<ChessMove> getValidMoves() {
+		return validMoves;
+	}
+	//---------------------------------------------------
 	// set/get chess pieces
 	public ChessPiece get(int x, int y) { return board[x][y]; }
 	public ChessPiece get(ChessLocation loc) { return board[loc.x][loc.y]; }
@@ -79,32 +212,134 @@ public class ChessBoard {
 	public boolean isStaleMate() {
 		return validMoves.size() == 0 && !inCheck(color.opposite());
 	}
+
+	//---------------------------------------------------
+	// Test for a draw by threefold repetition or the fifty move rule.
+	// Only valid for the game's current position (the last one played).
+	public boolean isDraw() {
+		return validMoves.size() > 0 && (isFiftyMoveDraw() || history.repetitions(halfmoveClock) >= 2);
+	}
+	public boolean isFiftyMoveDraw() {
+		return halfmoveClock >= 100;
+	}
+	//---------------------------------------------------
+	// In the search a single repetition is scored as a draw, since
+	// the side that can repeat once can repeat again.
+	boolean isSearchDraw() {
+		return validMoves.size() > 0 && (isFiftyMoveDraw() || history.repetitions(halfmoveClock) >= 1);
+	}
 	
 	//---------------------------------------------------
-    static int CHECKMATE_VALUE = 100;
+	// Shared evaluation caches. The pawn structure rarely changes
+	// between nodes so its table nearly always hits.
+    static EvalHashTable pawnTable = new EvalHashTable("pawn table", 1 << 20);
+    static EvalHashTable evalTable = new EvalHashTable("eval cache", 8 << 20);
+
+    // optional NNUE evaluator replacing the material/pawn evaluation
+    static Nnue nnue;
+
+    static SearchStats stats = new SearchStats();
+
+    // optional disk backed cache of root search results
+    static AnalysisCache analysisCache;
+
+    // optional recorder of search events
+    static SearchTrace trace;
+
+    // optional mate finder run before the alpha-beta search
+    static MateSearch mateSearch;
+
+    static int CHECKMATE_VALUE = 10000;
     void evaluate()
     {
-        value = 0;
-        for (int y = 0; y < 8; y++)
-            for (int x = 0; x < 8; x++)
-            		value += board[x][y].value();
+        if (accumulator != null)
+            value = nnue.evaluate(accumulator, color.opposite());
+        else if ((value = evalTable.probe(hash)) == EvalHashTable.MISS)
+        {
+            value = 0;
+            for (int y = 0; y < 8; y++)
+                for (int x = 0; x < 8; x++)
+                		value += board[x][y].value();
+            value += pawnValue();
+            evalTable.store(hash, value);
+        }
 
         // If there are no valid moves, then we have check mate.
         if (validMoves.size() == 0)
         		value += (color == ChessColor.White) ? CHECKMATE_VALUE : -CHECKMATE_VALUE;
+    }
+	//---------------------------------------------------
+	// pawn structure score, looked up in the pawn hash table
+    int pawnValue()
+    {
+        int score = pawnTable.probe(pawnHash);
+        if (score == EvalHashTable.MISS)
+        {
+            score = PawnStructure.evaluate(this);
+            pawnTable.store(pawnHash, score);
+        }
+        return score;
     }
 	//---------------------------------------------------
     ChessBoard getChild(int i)
     {
-        // allocate child array if needed
+        // order the moves and allocate child array if needed
         if (children == null)
+        {
+            orderMoves();
             children = new ChessBoard[validMoves.size()];
+        }
 
         // if the child hasn't been created, we create it and return it
         if (children[i] == null)
             children[i] = new ChessBoard(this, validMoves.get(i));
         return children[i];
     }
+	//---------------------------------------------------
+	// Order the valid moves before the first child is created: captures
+	// that don't lose material by static exchange (best first), then quiet
+	// moves, then losing captures. Child indices follow this order, so a
+	// move index must not be looked up before the moves are ordered.
+    void orderMoves()
+    {
+        if (exchange != null)
+            return;
+        int n = validMoves.size();
+        int[] score = new int[n];
+        int[] rank = new int[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++)
+        {
+            ChessMove m = validMoves.get(i);
+            order[i] = i;
+            if (get(m.to) != ChessPiece.Empty)
+            {
+                score[i] = StaticExchange.evaluate(this, m);
+                rank[i] = (score[i] >= 0 ? 0 : 200000) - score[i];
+            }
+            else
+                rank[i] = 100000;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(rank[a], rank[b]));   // stable, quiet moves keep their order
+
+        ArrayList<ChessMove> ordered = new ArrayList<ChessMove>(n);
+        exchange = new int[n];
+        for (int i = 0; i < n; i++)
+        {
+            ordered.add(validMoves.get(order[i]));
+            exchange[i] = score[order[i]];
+        }
+        validMoves = ordered;
+    }
+	//---------------------------------------------------
+	// the move that leads to a child board, or null if it isn't a child
+	ChessMove moveTo(ChessBoard child) {
+		if (children != null)
+			for (int i = 0; i < children.length; i++)
+				if (children[i] == child)
+					return validMoves.get(i);
+		return null;
+	}
 	//---------------------------------------------------
 	// make move and return displaced piece
 	public ChessPiece makeMove(ChessMove move) {
@@ -137,14 +372,22 @@ public class ChessBoard {
 			blackKing = move.from;		
 	}
 	//---------------------------------------------------
+	// The returned board becomes the game's current position.
 	public ChessBoard attemptMove(ChessMove move) {
+		orderMoves();
 		for (int i = 0; i < validMoves.size(); i++) {
 			if (move.equals(validMoves.get(i)))
-				return getChild(i);
+				return play(getChild(i));
 		}
 		return this;
 	}
 	//---------------------------------------------------
+	// record a child board as played in the game history
+	private ChessBoard play(ChessBoard child) {
+		history.push(child.hash);
+		return child;
+	}
+	//---------------------------------------------------
 	// initialize the board to the new game configuration
 	private void newGame() {
 		
@@ -464,29 +707,145 @@ public class ChessBoard {
     //-------------------------------------------------------
     // Do an AI search for the best move for the given player color and select
     // that board as the new root
-    final int MAX_DEPTH = 4;
+    static final int MAX_DEPTH = 4;
     final int MAX = 1000000;
     final int MIN = -1000000;
     final int MAX_DEPTH_CHILDREN = 10;    // max number of children that will be searched to max depth
+    final int ASPIRATION_WINDOW = 50;     // window around the previous iteration's score (centipawns)
     
     public ChessBoard aiMakeMove()
     {
-    		// return immediately if no valid moves (check mate or stale mate)
-    		if (validMoves.size() == 0)
+    		return aiMakeMove(MAX_DEPTH);
+    }
+    public ChessBoard aiMakeMove(int searchDepth)
+    {
+    		// stay on this board if the game is over (check mate, stale mate or draw)
+    		if (isDraw())
     			return this;
-    	
+    		ArrayList<ChessBoard> bestMoves = aiBestMoves(searchDepth);
+    		if (bestMoves.size() == 0)
+    			return this;
+
+        // If there are multiple best moves (equally good), return a random move from the best list.
+        int index = (int)(Math.random() * bestMoves.size());
+        return play(bestMoves.get(index));
+    }
+
+    //-------------------------------------------------------
+    // Search for the list of equally good best child boards.
+    // The search is iteratively deepened: each iteration after the first
+    // uses an aspiration window around the previous iteration's score, and
+    // searches the previous best moves first. If the score falls outside the
+    // window, the iteration is repeated with the full window.
+    ArrayList<ChessBoard> aiBestMoves()
+    {
+        return aiBestMoves(MAX_DEPTH);
+    }
+    ArrayList<ChessBoard> aiBestMoves(int searchDepth)
+    {
+        ArrayList<ChessBoard> bestMoves = new ArrayList<ChessBoard>();
+        if (validMoves.size() == 0)
+            return bestMoves;
+        orderMoves();
+
+        // use a cached result from an earlier search of this position, even from an earlier run
+        AnalysisCache cache = analysisCache;
+        AnalysisCache.Entry cached = cache != null ? cache.probe(hash) : null;
+        if (cached != null && cached.depth >= searchDepth && cached.move != null)
+        {
+            for (int i = 0; i < validMoves.size(); i++)
+                if (validMoves.get(i).equals(cached.move))
+                {
+                    stats.cacheHits.increment();
+                    bestMoves.add(getChild(i));
+                    searchScore = cached.score;
+                    return bestMoves;
+                }
+        }
+
+        // a forced mate found by the mate finder replaces the alpha-beta search
+        MateSearch mate = mateSearch;
+        if (mate != null)
+        {
+            MateSearch.Result result = mate.solve(this);
+            // the line is empty if re-proving an evicted part of the proof ran out of budget
+            if (result.outcome == MateSearch.Outcome.Mate && !result.line.isEmpty())
+            {
+                for (int i = 0; i < validMoves.size(); i++)
+                    if (validMoves.get(i).equals(result.line.get(0)))
+                    {
+                        bestMoves.add(getChild(i));
+                        searchScore = CHECKMATE_VALUE - result.line.size();
+                        return bestMoves;
+                    }
+            }
+        }
+
+        stats.searches.increment();
+        int score = rootSearch(2, MIN, MAX, bestMoves);
+        for (int maxDepth = 3; maxDepth <= searchDepth; maxDepth++)
+        {
+            int A = score - ASPIRATION_WINDOW;
+            int B = score + ASPIRATION_WINDOW;
+            score = rootSearch(maxDepth, A, B, bestMoves);
+            if (score <= A || score >= B)
+            {
+                stats.aspirationFails.increment();
+                score = rootSearch(maxDepth, MIN, MAX, bestMoves);
+            }
+        }
+        searchScore = score;
+        if (cache != null)
+            cache.store(hash, score, searchDepth, moveTo(bestMoves.get(0)));
+        return bestMoves;
+    }
+
+    //-------------------------------------------------------
+    // Search the children of the root to the given depth, filling bestMoves
+    // with all children that share the best value. The best moves from the
+    // previous iteration (passed in bestMoves) are searched first.
+    int rootSearch(int maxDepth, int A, int B, ArrayList<ChessBoard> bestMoves)
+    {
+        SearchTrace t = trace;
+        if (t != null)
+            t.root(hash, maxDepth);
+        ChessColor playerColor = color.opposite();
+        ArrayList<ChessBoard> order = new ArrayList<ChessBoard>(bestMoves);
+        for (int i = 0; i < validMoves.size(); i++)
+        {
+            ChessBoard child = getChild(i);
+            if (!order.contains(child))
+                order.add(child);
+        }
+        bestMoves.clear();
+
         // Get the minimum value for each child, and find the largest of those values.
         // As we do this, we keep a list of all children/moves that have the same best/largest value.
-    		ChessColor playerColor = color.opposite();
-        ArrayList<ChessBoard> bestMoves = new ArrayList<ChessBoard>();
         int maxValue = MIN;
-        int A = MIN;
-        int B = MAX;
         int depth = 1;
-        for (int i = 0; i < validMoves.size(); i++)
+        for (ChessBoard child : order)
         {
-            ChessBoard child = getChild(i);
-            int val = child.minValue(playerColor, depth + 1, A, B);
+            // After the first move, scout with a null window to see if a move is at least as
+            // good as the best so far (ties are kept), and only then search it with the full window.
+            boolean first = bestMoves.size() == 0;
+            int alpha = Math.max(A, maxValue - 1);
+            int val;
+            history.push(child.hash);
+            if (first)
+                val = child.minValue(playerColor, depth + 1, maxDepth, A, B);
+            else
+            {
+                stats.scouts.increment();
+                val = child.minValue(playerColor, depth + 1, maxDepth, alpha, alpha + 1);
+                if (val > alpha && val < B)
+                {
+                    stats.researches.increment();
+                    val = child.minValue(playerColor, depth + 1, maxDepth, alpha, B);
+                }
+            }
+            history.pop();
+            if (!first && val <= alpha)
+                continue;
             if (bestMoves.size() == 0 || val == maxValue)
             {
                 bestMoves.add(child);
@@ -498,23 +857,35 @@ public class ChessBoard {
                 bestMoves.add(child);
                 maxValue = val;
             }
-            A = Math.max(maxValue, A);
         }
-        
-        // If there are multiple best moves (equally good), return a random move from the best list.
-        int index = (int)(Math.random() * bestMoves.size());
-        return bestMoves.get(index);
+        return maxValue;
     }
 
     //-------------------------------------------------------
-    // Get maximum value of node.
-    int maxValue(ChessColor playerColor, int depth, int A, int B)
+    // Get maximum value of node, recording it if a trace is active.
+    // Values <= A are upper bounds and values >= B are lower bounds.
+    int maxValue(ChessColor playerColor, int depth, int maxDepth, int A, int B)
     {
+        SearchTrace t = trace;
+        if (t == null)
+            return maxSearch(playerColor, depth, maxDepth, A, B);
+        t.enter(depth, A, B, move);
+        int val = maxSearch(playerColor, depth, maxDepth, A, B);
+        t.exit(depth, val, val >= B);
+        return val;
+    }
+    int maxSearch(ChessColor playerColor, int depth, int maxDepth, int A, int B)
+    {
+        // A repeated position or fifty moves without a capture or pawn move is a draw.
+        if (isSearchDraw())
+            return 0;
+
         // If max depth has been reached or there are no children (no possible moves), return node's heuristic value.
-        if (depth >= MAX_DEPTH || validMoves.size() == 0) 
+        if (depth >= maxDepth || validMoves.size() == 0) 
             return playerColor == ChessColor.White ? value : -value;
 
         // Get the minimum value for each child, and return the largest of those values.
+        orderMoves();
         int maxValue = MIN;
         int depthChange = 1;
         int mod = Math.max(validMoves.size() / MAX_DEPTH_CHILDREN, 1);
@@ -525,11 +896,31 @@ public class ChessBoard {
                 depthChange = 1;    // will continue to increment depth by one until it reaches max depth (4)
             else
                 depthChange = 3;    // will increment by three, causing search to stop at earlier depth (3)
+            if (pruneExchange(i, depth + depthChange, maxDepth))
+                continue;
 
-            maxValue = Math.max(getChild(i).minValue(playerColor, depth + depthChange, A, B), maxValue);
-            
-            //If best max so far is greater than best min so far, then don't look at remaining children.
-            if (maxValue > B)
+            // Principal variation search: the first child gets the full window, the rest
+            // a null window scout that is only re-searched if it beats the best so far.
+            ChessBoard child = getChild(i);
+            history.push(child.hash);
+            int val;
+            if (i == 0 || B - A <= 1)
+                val = child.minValue(playerColor, depth + depthChange, maxDepth, A, B);
+            else
+            {
+                stats.scouts.increment();
+                val = child.minValue(playerColor, depth + depthChange, maxDepth, A, A + 1);
+                if (val > A && val < B)
+                {
+                    stats.researches.increment();
+                    val = child.minValue(playerColor, depth + depthChange, maxDepth, A, B);
+                }
+            }
+            history.pop();
+            maxValue = Math.max(val, maxValue);
+
+            //If best max so far reaches the best min so far, then don't look at remaining children.
+            if (maxValue >= B)
                 return maxValue;
             
             A = Math.max(maxValue, A);
@@ -538,14 +929,43 @@ public class ChessBoard {
     }
 
     //-------------------------------------------------------
-    // Get minimum value of node.
-    int minValue(ChessColor playerColor, int depth, int A, int B)
+    // A capture that loses material by static exchange isn't searched when
+    // its board would be a leaf, since the recapture would be beyond the
+    // horizon and the leaf would score the lost piece as won. The first
+    // move is always searched, and so are all moves when in check.
+    boolean pruneExchange(int i, int childDepth, int maxDepth)
+    {
+        if (i == 0 || childDepth < maxDepth || exchange[i] >= 0 || inCheck(color.opposite()))
+            return false;
+        stats.exchangePrunes.increment();
+        return true;
+    }
+
+    //-------------------------------------------------------
+    // Get minimum value of node, recording it if a trace is active.
+    // Values <= A are upper bounds and values >= B are lower bounds.
+    int minValue(ChessColor playerColor, int depth, int maxDepth, int A, int B)
+    {
+        SearchTrace t = trace;
+        if (t == null)
+            return minSearch(playerColor, depth, maxDepth, A, B);
+        t.enter(depth, A, B, move);
+        int val = minSearch(playerColor, depth, maxDepth, A, B);
+        t.exit(depth, val, val <= A);
+        return val;
+    }
+    int minSearch(ChessColor playerColor, int depth, int maxDepth, int A, int B)
     {
+        // A repeated position or fifty moves without a capture or pawn move is a draw.
+        if (isSearchDraw())
+            return 0;
+
         // If max depth has been reached or there are no children (no possible moves), return node's heuristic value.
-        if (depth >= MAX_DEPTH || validMoves.size() == 0)
+        if (depth >= maxDepth || validMoves.size() == 0)
         		return playerColor == ChessColor.White ? value : -value;
 
         // Get the maximum value for each child, and return the smallest of those values.
+        orderMoves();
         int minValue = MAX;
         int depthChange = 1;
         int mod = Math.max(validMoves.size() / MAX_DEPTH_CHILDREN, 1);
@@ -556,11 +976,30 @@ public class ChessBoard {
                 depthChange = 1;
             else
                 depthChange = 3;
+            if (pruneExchange(i, depth + depthChange, maxDepth))
+                continue;
 
-            minValue = Math.min(getChild(i).maxValue(playerColor, depth + depthChange, A, B), minValue);
+            // Principal variation search (see maxValue)
+            ChessBoard child = getChild(i);
+            history.push(child.hash);
+            int val;
+            if (i == 0 || B - A <= 1)
+                val = child.maxValue(playerColor, depth + depthChange, maxDepth, A, B);
+            else
+            {
+                stats.scouts.increment();
+                val = child.maxValue(playerColor, depth + depthChange, maxDepth, B - 1, B);
+                if (val < B && val > A)
+                {
+                    stats.researches.increment();
+                    val = child.maxValue(playerColor, depth + depthChange, maxDepth, A, B);
+                }
+            }
+            history.pop();
+            minValue = Math.min(val, minValue);
 
-            // If best max so far is greater than best min so far, then don't look at remaining children.
-            if (minValue < A)
+            // If best min so far reaches the best max so far, then don't look at remaining children.
+            if (minValue <= A)
                 return minValue;
 
             B = Math.min(minValue, B);
@@ -568,4 +1007,4 @@ public class ChessBoard {
         return minValue;
     }
 	//---------------------------------------------------
-}
\ No newline at end of file
+}
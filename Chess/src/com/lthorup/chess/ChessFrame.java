@@ -4,6 +4,8 @@ import java.awt.Color;
 import java.awt.EventQueue;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.nio.file.Paths;
 
 import javax.swing.JButton;
 import javax.swing.JFrame;
@@ -12,6 +14,7 @@ import javax.swing.border.EmptyBorder;
 import javax.swing.JTextField;
 import javax.swing.SwingConstants;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.ChangeEvent;
 
@@ -19,6 +22,7 @@ public class ChessFrame extends JFrame {
 
 	private JPanel contentPane;
 	private ChessView chessView;
+	private static volatile ChessView gameView;   // stopped before the search trace is closed
 	private JTextField turn;
 	private JTextField status;
 	private JButton btnStartStop;
@@ -27,6 +31,7 @@ public class ChessFrame extends JFrame {
 	 * Launch the application.
 	 */
 	public static void main(String[] args) {
+		initEngine();
 		EventQueue.invokeLater(new Runnable() {
 			public void run() {
 				try {
@@ -39,6 +44,58 @@ public class ChessFrame extends JFrame {
 		});
 	}
 
+	/**
+	 * Load the engine's optional files: evaluation parameters, NNUE
+	 * network, (with -Dchess.cache=file) the analysis cache, (with
+	 * -Dchess.mate=nodes) the mate finder and (with -Dchess.trace=file)
+	 * a search trace.
+	 */
+	private static void initEngine() {
+		EvalParams.loadDefault();
+		ChessBoard.nnue = Nnue.loadDefault();
+
+		// -Dchess.cache=file keeps root search results in that file (16 MB) across runs
+		String cachePath = System.getProperty("chess.cache");
+		if (cachePath != null) {
+			try {
+				AnalysisCache cache = new AnalysisCache(Paths.get(cachePath), 16 << 20, AnalysisCache.fingerprint(ChessBoard.MAX_DEPTH));
+				ChessBoard.analysisCache = cache;
+				Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+					try {
+						cache.close();
+					} catch (IOException e) {}
+				}));
+			} catch (IOException e) {
+				System.err.println("unable to open " + cachePath + ": " + e.getMessage());
+			}
+		}
+
+		// -Dchess.mate=nodes runs the mate finder with that node limit before each AI move
+		String mateNodes = System.getProperty("chess.mate");
+		if (mateNodes != null)
+			ChessBoard.mateSearch = new MateSearch(32 << 20).limits(31, Long.parseLong(mateNodes), 2000);
+
+		String tracePath = System.getProperty("chess.trace");
+		if (tracePath != null) {
+			try {
+				SearchTrace trace = new SearchTrace(Paths.get(tracePath), 1 << 20);
+				ChessBoard.trace = trace;
+				Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+					// the recorder must only be closed once no search is writing to it
+					ChessView view = gameView;
+					if (view != null)
+						view.shutdown();
+					ChessBoard.trace = null;
+					try {
+						trace.close();
+					} catch (IOException e) {}
+				}));
+			} catch (IOException e) {
+				System.err.println("unable to open " + tracePath + ": " + e.getMessage());
+			}
+		}
+	}
+
 	/**
 	 * Create the frame.
 	 */
@@ -54,6 +111,7 @@ public class ChessFrame extends JFrame {
 		contentPane.setLayout(null);
 		
 		chessView = new ChessView();
+		gameView = chessView;
 		boolean running = false;
 		chessView.setBounds(22, 20, 600, 600);
 		contentPane.add(chessView);
@@ -109,6 +167,19 @@ public class ChessFrame extends JFrame {
 		cbBlackAi.setBounds(634, 124, 97, 23);
 		contentPane.add(cbBlackAi);
 		
+		// search engine used by the AI players, from the next new game on
+		JComboBox<SearchEngine> cbEngine = new JComboBox<SearchEngine>(new SearchEngine[] {
+			new AlphaBetaEngine(4),
+			new MctsEngine(Runtime.getRuntime().availableProcessors(), 2000, Integer.MAX_VALUE, 1 << 20)
+		});
+		cbEngine.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				chessView.setEngine((SearchEngine)cbEngine.getSelectedItem());
+			}
+		});
+		cbEngine.setBounds(634, 241, 105, 26);
+		contentPane.add(cbEngine);
+		
 		btnStartStop = new JButton("Start");
 		btnStartStop.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
@@ -0,0 +1,123 @@
+package com.lthorup.chess;
+
+import java.util.ArrayList;
+
+//-------------------------------------------------------
+// Conversion between engine moves and standard notation
+// (square names, UCI coordinate moves and SAN).
+public class ChessNotation {
+
+	//---------------------------------------------------
+	// square name such as "e4" (y = 0 is the 8th rank)
+	public static String square(ChessLocation loc) {
+		return "" + (char)('a' + loc.x) + (char)('8' - loc.y);
+	}
+	//---------------------------------------------------
+	// parse a square name, returns null if it isn't one
+	public static ChessLocation parseSquare(String s) {
+		if (s.length() != 2)
+			return null;
+		int x = s.charAt(0) - 'a';
+		int y = '8' - s.charAt(1);
+		if (x < 0 || x > 7 || y < 0 || y > 7)
+			return null;
+		return new ChessLocation(x, y);
+	}
+	//---------------------------------------------------
+	// UCI coordinate notation such as "e2e4" or "e7e8q"
+	public static String toUci(ChessBoard board, ChessMove move) {
+		String s = square(move.from) + square(move.to);
+		if (isPromotion(board, move))
+			s += "q";
+		return s;
+	}
+	//---------------------------------------------------
+	// Standard algebraic notation for a valid move on the board, including
+	// the check or mate suffix.
+	public static String toSan(ChessBoard board, ChessMove move) {
+		ChessBoard next = new ChessBoard(board, move);
+		String san = sanBase(board, move);
+		if (next.isCheckMate() && !next.isStaleMate())
+			return san + "#";
+		if (next.isCheck())
+			return san + "+";
+		return san;
+	}
+	//---------------------------------------------------
+	// Find the valid move matching a SAN string. Returns null if there is no
+	// matching move, which includes castling and under promotion since the
+	// engine doesn't support them.
+	public static ChessMove parseSan(ChessBoard board, String san) {
+		// strip check/mate marks and annotations
+		int end = san.length();
+		while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0)
+			end--;
+		san = san.substring(0, end);
+		if (san.startsWith("O-O") || san.startsWith("0-0"))
+			return null;
+
+		// only queen promotion is supported
+		int promo = san.indexOf('=');
+		if (promo >= 0) {
+			if (!san.substring(promo + 1).equals("Q"))
+				return null;
+			san = san.substring(0, promo) + "=Q";
+		}
+		else if (san.length() > 2 && Character.isLowerCase(san.charAt(0)) && san.charAt(san.length() - 1) == 'Q')
+			san = san.substring(0, san.length() - 1) + "=Q";
+
+		for (ChessMove move : board.getValidMoves()) {
+			if (san.equals(sanBase(board, move)))
+				return move;
+		}
+		return null;
+	}
+	//---------------------------------------------------
+	// SAN without the check suffix
+	static String sanBase(ChessBoard board, ChessMove move) {
+		ChessPiece piece = board.get(move.from);
+		boolean capture = board.get(move.to) != ChessPiece.Empty;
+		StringBuilder sb = new StringBuilder();
+		if (piece == ChessPiece.WhitePawn || piece == ChessPiece.BlackPawn) {
+			if (capture)
+				sb.append((char)('a' + move.from.x)).append('x');
+			sb.append(square(move.to));
+			if (isPromotion(board, move))
+				sb.append("=Q");
+			return sb.toString();
+		}
+
+		sb.append(Character.toUpperCase(piece.fen()));
+
+		// disambiguate from other pieces of the same type that can reach the square
+		boolean ambiguous = false, sameFile = false, sameRank = false;
+		ArrayList<ChessMove> moves = board.getValidMoves();
+		for (ChessMove m : moves) {
+			if (m.to.equals(move.to) && !m.from.equals(move.from) && board.get(m.from) == piece) {
+				ambiguous = true;
+				if (m.from.x == move.from.x)
+					sameFile = true;
+				if (m.from.y == move.from.y)
+					sameRank = true;
+			}
+		}
+		if (ambiguous) {
+			if (!sameFile)
+				sb.append((char)('a' + move.from.x));
+			else if (!sameRank)
+				sb.append((char)('8' - move.from.y));
+			else
+				sb.append(square(move.from));
+		}
+
+		if (capture)
+			sb.append('x');
+		sb.append(square(move.to));
+		return sb.toString();
+	}
+	//---------------------------------------------------
+	static boolean isPromotion(ChessBoard board, ChessMove move) {
+		ChessPiece piece = board.get(move.from);
+		return (piece == ChessPiece.WhitePawn && move.to.y == 0) || (piece == ChessPiece.BlackPawn && move.to.y == 7);
+	}
+}
@@ -1,25 +1,38 @@
 package com.lthorup.chess;
 
 public enum ChessPiece {
-	
-	BlackPawn(ChessColor.Black, -1),
-	BlackRook(ChessColor.Black, -5),
-	BlackKnight(ChessColor.Black, -5),
-	BlackBishop(ChessColor.Black, -5),
-	BlackQueen(ChessColor.Black, -10),
-	BlackKing(ChessColor.Black, 0),
-	WhitePawn(ChessColor.White, 1),
-	WhiteRook(ChessColor.White, 5),
-	WhiteKnight(ChessColor.White, 5),
-	WhiteBishop(ChessColor.White, 5),
-	WhiteQueen(ChessColor.White, 10),
-	WhiteKing(ChessColor.White, 0),
-	Empty(ChessColor.Black, 0);
-	
-	ChessPiece(ChessColor color, int value) { this.color = color; this.value = value; }
+
+	BlackPawn(ChessColor.Black, -100, 'p'),
+	BlackRook(ChessColor.Black, -500, 'r'),
+	BlackKnight(ChessColor.Black, -500, 'n'),
+	BlackBishop(ChessColor.Black, -500, 'b'),
+	BlackQueen(ChessColor.Black, -1000, 'q'),
+	BlackKing(ChessColor.Black, 0, 'k'),
+	WhitePawn(ChessColor.White, 100, 'P'),
+	WhiteRook(ChessColor.White, 500, 'R'),
+	WhiteKnight(ChessColor.White, 500, 'N'),
+	WhiteBishop(ChessColor.White, 500, 'B'),
+	WhiteQueen(ChessColor.White, 1000, 'Q'),
+	WhiteKing(ChessColor.White, 0, 'K'),
+	Empty(ChessColor.Black, 0, '.');
+
+	ChessPiece(ChessColor color, int value, char fen) { this.color = color; this.value = value; this.fen = fen; }
 	private int value;
 	private ChessColor color;
+	private char fen;
 	public int value() { return value; }
 	public ChessColor color() { return color; }
 	public boolean empty() { return this == Empty; }
+	public char fen() { return fen; }
+
+	// set the material value (centipawns) of this piece type, signed by color
+	void setValue(int v) { value = (color == ChessColor.White) ? v : -v; }
+
+	// look up a piece from its FEN letter, returns null if not a piece letter
+	public static ChessPiece fromFen(char c) {
+		for (ChessPiece p : values())
+			if (p != Empty && p.fen == c)
+				return p;
+		return null;
+	}
 }
@@ -3,6 +3,11 @@ package com.lthorup.chess;
 import java.awt.Color;
 import java.awt.Cursor;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.Transparency;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
@@ -24,8 +29,10 @@ public class ChessView extends JPanel implements Runnable {
 	ChessBoard board;
 	ChessColor playerTurn;
 	boolean running = false;
-	boolean exiting = false;
+	volatile boolean exiting = false;
 	boolean whiteIsAi=false, blackIsAi=true;
+	SearchEngine engine = new AlphaBetaEngine(4);
+	SearchEngine nextEngine = engine;   // engine for the next new game
 	JTextField turnTextField;
 	JTextField statusTextField;
 	
@@ -33,6 +40,15 @@ public class ChessView extends JPanel implements Runnable {
 	int EX, EY;
 	int TileX, TileY;
 	boolean movingPiece = false;
+	Thread gameThread;
+
+	// Pre-composited board layer (squares and the pieces that aren't being
+	// dragged). It is only redrawn when the board or the dragged piece changes,
+	// so painting while dragging is one image copy plus the dragged sprite.
+	BufferedImage boardLayer;
+	ChessBoard layerBoard;
+	boolean layerMoving;
+	int layerTileX, layerTileY;
 	
 	public void setTurnTextField(JTextField t) {
 		turnTextField = t;
@@ -42,6 +58,7 @@ public class ChessView extends JPanel implements Runnable {
 	}
 
 	public void newGame() {
+		engine = nextEngine;
 		board = new ChessBoard(ChessColor.Black);
 		playerTurn = ChessColor.White;
 		if (statusTextField != null)
@@ -61,6 +78,10 @@ public class ChessView extends JPanel implements Runnable {
 	public void blackAi(boolean ai) {
 		blackIsAi = ai;
 	}
+	// the search engine takes effect with the next new game
+	public void setEngine(SearchEngine e) {
+		nextEngine = e;
+	}
 
 	public ChessView() {
 		setBackground(Color.GRAY);
@@ -68,9 +89,12 @@ public class ChessView extends JPanel implements Runnable {
 			@Override
 			public void mouseDragged(MouseEvent e) {
 				if (movingPiece) {
+					// only repaint where the sprite was and where it is now
+					Rectangle dirty = spriteBounds();
 					EX = e.getX();
 					EY = e.getY();
-					repaint();
+					dirty.add(spriteBounds());
+					repaint(dirty);
 				}
 			}
 		});
@@ -78,14 +102,18 @@ public class ChessView extends JPanel implements Runnable {
 			@Override
 			public void mousePressed(MouseEvent e) {
 				boolean playerIsAi = playerTurn == ChessColor.White ? whiteIsAi : blackIsAi;
-				if (! running || playerIsAi)
+				if (! running || playerIsAi || board.isDraw())
 					return;
 				SX = e.getX();
 				SY = e.getY();
 				TileX = SX / SIZE;
 				TileY = SY / SIZE;
-				if (TileX >= 0 && TileX < 8 && TileY >= 0 && TileY < 8 && board.get(TileX, TileY) != ChessPiece.Empty)
+				if (TileX >= 0 && TileX < 8 && TileY >= 0 && TileY < 8 && board.get(TileX, TileY) != ChessPiece.Empty) {
+					EX = SX;
+					EY = SY;
 					movingPiece = true;
+					repaint(TileX * SIZE, TileY * SIZE, SIZE, SIZE);
+				}
 			}
 			@Override
 			public void mouseReleased(MouseEvent e) {
@@ -128,13 +156,31 @@ public class ChessView extends JPanel implements Runnable {
 	        pieceImages[ChessPiece.WhiteKing.ordinal()] = ImageIO.read(getClass().getClassLoader().getResource("Images/WhiteKing.png"));
 	        
 	    } catch (IOException e) {}
+
+	    // convert the images to the screen's format so drawing them can be accelerated
+	    darkSquare = toCompatibleImage(darkSquare);
+	    lightSquare = toCompatibleImage(lightSquare);
+	    for (int i = 0; i < pieceImages.length; i++)
+	    		pieceImages[i] = toCompatibleImage(pieceImages[i]);
 	    
 	    // create the initial board
 	    newGame();
 	    
 	    // start game thread
-	    Thread thread = new Thread(this);
-	    thread.start();
+	    gameThread = new Thread(this);
+	    gameThread.start();
+	}
+
+	//---------------------------------------------
+	// stop the game thread, waiting for a search in progress to finish
+	public void shutdown() {
+		exiting = true;
+		try {
+			gameThread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 	}
 	
 	//---------------------------------------------
@@ -146,10 +192,15 @@ public class ChessView extends JPanel implements Runnable {
 				if (playerIsAi) {
 					ChessBoard lastBoard = board;
 					statusTextField.setText("thinking");
-					board = board.aiMakeMove();
+					ChessMove move = engine.chooseMove(board);
+					if (move != null)
+						board = board.attemptMove(move);
 					if (board != lastBoard) {
 						playerTurn = playerTurn.opposite();
-						repaint();
+						// only the squares the piece left and landed on changed
+						Rectangle dirty = squareBounds(move.from);
+						dirty.add(squareBounds(move.to));
+						repaint(dirty);
 					}
 					updateStats();
 				}
@@ -170,14 +221,56 @@ public class ChessView extends JPanel implements Runnable {
 			statusTextField.setText("StaleMate");
 		else if (board.isCheckMate())
 			statusTextField.setText("Checkmate");
+		else if (board.isDraw())
+			statusTextField.setText(board.isFiftyMoveDraw() ? "Draw (50)" : "Draw (rep)");
 		else if (board.isCheck())
 			statusTextField.setText("Check");
 		else
 			statusTextField.setText("");		
 	}
 	
-	@Override
-	public void paint(Graphics g) {
+	//---------------------------------------------
+	// copy an image into the default screen's compatible format
+	private static BufferedImage toCompatibleImage(BufferedImage image) {
+		if (image == null || GraphicsEnvironment.isHeadless())
+			return image;
+		GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+		if (image.getColorModel().equals(gc.getColorModel()))
+			return image;
+		BufferedImage compatible = gc.createCompatibleImage(image.getWidth(), image.getHeight(), image.getTransparency());
+		Graphics2D g = compatible.createGraphics();
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		return compatible;
+	}
+
+	//---------------------------------------------
+	// where the dragged piece is drawn
+	private Rectangle spriteBounds() {
+		return new Rectangle(TileX * SIZE + (EX - SX), TileY * SIZE + (EY - SY), SIZE, SIZE);
+	}
+
+	//---------------------------------------------
+	// where a square is drawn
+	private Rectangle squareBounds(ChessLocation loc) {
+		return new Rectangle(loc.x * SIZE, loc.y * SIZE, SIZE, SIZE);
+	}
+
+	//---------------------------------------------
+	// redraw the board layer if the board or the dragged piece changed
+	private void validateLayer() {
+		boolean moving = movingPiece;
+		if (boardLayer != null && layerBoard == board && layerMoving == moving
+				&& (!moving || (layerTileX == TileX && layerTileY == TileY)))
+			return;
+
+		if (boardLayer == null) {
+			GraphicsConfiguration gc = getGraphicsConfiguration();
+			boardLayer = gc != null ? gc.createCompatibleImage(8 * SIZE, 8 * SIZE, Transparency.OPAQUE)
+					: new BufferedImage(8 * SIZE, 8 * SIZE, BufferedImage.TYPE_INT_RGB);
+		}
+		ChessBoard b = board;
+		Graphics2D g = boardLayer.createGraphics();
 		for (int y = 0; y < 8; y++)
 			for (int x = 0; x < 8; x++) {
 				BufferedImage s = ((x+y) & 1) == 0 ? lightSquare : darkSquare;
@@ -185,15 +278,26 @@ public class ChessView extends JPanel implements Runnable {
 				int py = y * SIZE;
 				g.drawImage(s, px, py, null);
 				
-				ChessPiece piece = board.get(x,y);
-				if (piece != ChessPiece.Empty && (!movingPiece || TileX != x || TileY != y))
+				ChessPiece piece = b.get(x,y);
+				if (piece != ChessPiece.Empty && (!moving || TileX != x || TileY != y))
 					g.drawImage(pieceImages[piece.ordinal()], px, py, null);
 			}
-		if (movingPiece) {
-			ChessPiece piece = board.get(TileX, TileY);
-			int px = TileX * SIZE + (EX - SX);
-			int py = TileY * SIZE + (EY - SY);
-			g.drawImage(pieceImages[piece.ordinal()], px, py, null);
+		g.dispose();
+		layerBoard = b;
+		layerMoving = moving;
+		layerTileX = TileX;
+		layerTileY = TileY;
+	}
+
+	@Override
+	public void paint(Graphics g) {
+		validateLayer();
+		g.drawImage(boardLayer, 0, 0, null);
+		if (layerMoving) {
+			ChessPiece piece = layerBoard.get(layerTileX, layerTileY);
+			Rectangle r = spriteBounds();
+			if (piece != ChessPiece.Empty)
+				g.drawImage(pieceImages[piece.ordinal()], r.x, r.y, null);
 		}
 	}
 
@@ -0,0 +1,78 @@
+package com.lthorup.chess;
+
+import java.util.Random;
+
+//-------------------------------------------------------
+// Compares the MCTS engine with the alpha-beta engine: MCTS
+// simulations per second as the number of threads grows, and
+// games between the two engines from random openings, each
+// opening played with both colors.
+//
+// usage: EngineMatch [games] [mcts millis per move] [alpha-beta depth]
+public class EngineMatch {
+
+	static final int MAX_PLIES = 160;
+	static final int CAPACITY = 1 << 20;
+
+	//---------------------------------------------------
+	public static void main(String[] args) {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		long millis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+		int depth = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		EvalParams.loadDefault();
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		// scaling
+		for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+			MctsEngine mcts = new MctsEngine(threads, millis, Integer.MAX_VALUE, CAPACITY);
+			long simulations = 0, nanos = 0;
+			for (String fen : EvalBenchmark.POSITIONS) {
+				long start = System.nanoTime();
+				mcts.chooseMove(new ChessBoard(fen));
+				nanos += System.nanoTime() - start;
+				simulations += mcts.simulations();
+			}
+			System.out.printf("mcts %2d threads: %.0f simulations/s%n", threads, simulations / (nanos / 1e9));
+			if (threads == cores)
+				break;
+		}
+
+		// strength
+		SearchEngine mcts = new MctsEngine(cores, millis, Integer.MAX_VALUE, CAPACITY);
+		SearchEngine alphaBeta = new AlphaBetaEngine(depth);
+		Random random = new Random(1);
+		int wins = 0, draws = 0, losses = 0;
+		String opening = null;
+		for (int g = 0; g < games; g++) {
+			if (g % 2 == 0)
+				opening = EvalBenchmark.randomOpening(random);
+			boolean mctsWhite = (g % 2) == 0;
+			int result = playGame(opening, mctsWhite ? mcts : alphaBeta, mctsWhite ? alphaBeta : mcts);
+			int mctsResult = mctsWhite ? result : -result;
+			if (mctsResult > 0)
+				wins++;
+			else if (mctsResult < 0)
+				losses++;
+			else
+				draws++;
+			System.out.printf("game %d: mcts %s%n", g + 1, mctsResult > 0 ? "won" : mctsResult < 0 ? "lost" : "drew");
+		}
+		System.out.printf("mcts (%d threads, %d ms) vs alpha-beta (depth %d): +%d =%d -%d%n", cores, millis, depth, wins, draws, losses);
+	}
+
+	//---------------------------------------------------
+	// Play a game from the opening, returns 1 if white won, -1 if black
+	// won and 0 for a draw.
+	static int playGame(String fen, SearchEngine white, SearchEngine black) {
+		ChessBoard board = new ChessBoard(fen);
+		for (int ply = 0; ply < MAX_PLIES; ply++) {
+			if (board.isCheckMate())
+				return board.isStaleMate() ? 0 : (board.sideToMove() == ChessColor.White ? -1 : 1);
+			if (board.isDraw())
+				return 0;
+			SearchEngine engine = board.sideToMove() == ChessColor.White ? white : black;
+			board = board.attemptMove(engine.chooseMove(board));
+		}
+		return EvalBenchmark.adjudicate(board);
+	}
+}
@@ -0,0 +1,129 @@
+package com.lthorup.chess;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Random;
+
+//-------------------------------------------------------
+// Compares the NNUE evaluator with the material evaluator:
+// search speed in nodes per second on a set of positions, and
+// strength in games played between the two evaluators.
+//
+// Each move is searched from a fresh board built from the FEN
+// of the current position, so neither side reuses nodes that
+// were evaluated by the other evaluator.
+//
+// usage: EvalBenchmark <nnue file | -random> [games]
+public class EvalBenchmark {
+
+	static final String[] POSITIONS = {
+		"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w - - 0 1",
+		"r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w - - 0 1",
+		"r1bqk2r/pppp1ppp/2n2n2/2b1p3/2B1P3/3P1N2/PPP2PPP/RNBQK2R b - - 0 1",
+		"4k3/pp3ppp/8/3p4/3P4/8/PP3PPP/4K3 w - - 0 1",
+		"r3k2r/ppq2ppp/2n1bn2/3p4/3P4/2N1BN2/PPQ2PPP/R3K2R w - - 0 1",
+	};
+	static final int MAX_PLIES = 120;
+	static final int ADJUDICATE = 300;   // material margin (centipawns) that wins an unfinished game
+
+	//---------------------------------------------------
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("usage: EvalBenchmark <nnue file | -random> [games]");
+			System.exit(1);
+		}
+		EvalParams.loadDefault();
+		Nnue net = args[0].equals("-random") ? Nnue.random(128, 1) : Nnue.load(Paths.get(args[0]));
+		int games = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+		// speed
+		double material = nodesPerSecond(null);
+		String materialStats = ChessBoard.stats.toString();
+		double nnue = nodesPerSecond(net);
+		System.out.printf("material: %.0f nodes/s%n", material);
+		System.out.printf("          %s%n", materialStats);
+		System.out.printf("nnue:     %.0f nodes/s (%.2fx)%n", nnue, nnue / material);
+		System.out.printf("          %s%n", ChessBoard.stats);
+
+		// strength, playing each opening with both colors
+		Random random = new Random(1);
+		int wins = 0, draws = 0, losses = 0;
+		String opening = null;
+		for (int g = 0; g < games; g++) {
+			if (g % 2 == 0)
+				opening = randomOpening(random);
+			boolean nnueWhite = (g % 2) == 0;
+			int result = playGame(opening, nnueWhite ? net : null, nnueWhite ? null : net);
+			int nnueResult = nnueWhite ? result : -result;
+			if (nnueResult > 0)
+				wins++;
+			else if (nnueResult < 0)
+				losses++;
+			else
+				draws++;
+			System.out.printf("game %d: nnue %s%n", g + 1, nnueResult > 0 ? "won" : nnueResult < 0 ? "lost" : "drew");
+		}
+		System.out.printf("nnue vs material: +%d =%d -%d%n", wins, draws, losses);
+	}
+
+	//---------------------------------------------------
+	// Search each benchmark position and measure the node rate. The eval
+	// and pawn tables are cleared before each position, so the material
+	// evaluator isn't timed on entries left by the warm up pass or by
+	// the previous position. The search counters are left holding the
+	// totals of the timed pass.
+	static double nodesPerSecond(Nnue net) {
+		ChessBoard.nnue = net;
+		long nodes = 0, nanos = 0;
+		for (int pass = 0; pass < 2; pass++) {   // first pass warms up the JIT
+			nanos = 0;
+			ChessBoard.stats.reset();
+			for (String fen : POSITIONS) {
+				ChessBoard.evalTable.clear();
+				ChessBoard.pawnTable.clear();
+				long start = System.nanoTime();
+				new ChessBoard(fen).aiBestMoves();
+				nanos += System.nanoTime() - start;
+			}
+			nodes = ChessBoard.stats.nodes.sum();
+		}
+		ChessBoard.nnue = null;
+		return nodes / (nanos / 1e9);
+	}
+	//---------------------------------------------------
+	// Play a game from the opening, returns 1 if white won, -1 if black
+	// won and 0 for a draw.
+	static int playGame(String fen, Nnue white, Nnue black) {
+		for (int ply = 0; ply < MAX_PLIES; ply++) {
+			ChessBoard.nnue = null;
+			ChessBoard board = new ChessBoard(fen);
+			if (board.isCheckMate())
+				return board.isStaleMate() ? 0 : (board.sideToMove() == ChessColor.White ? -1 : 1);
+
+			ChessBoard.nnue = board.sideToMove() == ChessColor.White ? white : black;
+			fen = new ChessBoard(fen).aiMakeMove().toFen();
+		}
+		ChessBoard.nnue = null;
+		return adjudicate(new ChessBoard(fen));
+	}
+	//---------------------------------------------------
+	// result of an unfinished game by material
+	static int adjudicate(ChessBoard board) {
+		int[] f = EvalParams.features(board);
+		int material = 0;
+		int[] w = EvalParams.weights();
+		for (int i = 0; i < EvalParams.WHITE_PIECES.length; i++)
+			material += f[i] * w[i];
+		return material >= ADJUDICATE ? 1 : material <= -ADJUDICATE ? -1 : 0;
+	}
+	//---------------------------------------------------
+	// a few random moves from the start position
+	static String randomOpening(Random random) {
+		ChessBoard board = new ChessBoard(ChessColor.Black);
+		for (int ply = 0; ply < 4; ply++) {
+			ArrayList<ChessMove> moves = board.getValidMoves();
+			board = new ChessBoard(board, moves.get(random.nextInt(moves.size())));
+		}
+		return board.toFen();
+	}
+}
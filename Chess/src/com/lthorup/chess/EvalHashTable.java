@@ -0,0 +1,70 @@
+package com.lthorup.chess;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+//-------------------------------------------------------
+// Fixed size, lock-free cache of evaluation scores keyed by a
+// zobrist key. Used both as the pawn hash table (keyed by the pawn
+// only key) and as the evaluation cache (keyed by the full key).
+//
+// Each slot stores the key XORed with the data next to the data.
+// A reader only accepts a slot if the two agree, so a slot torn by
+// two threads writing at once reads as a miss instead of a wrong score.
+class EvalHashTable {
+
+	static final int MISS = Integer.MIN_VALUE;
+
+	private final String name;
+	private final long[] keys;
+	private final long[] data;
+	private final int mask;
+	private final LongAdder probes = new LongAdder();
+	private final LongAdder hits = new LongAdder();
+
+	//---------------------------------------------------
+	// create a table that uses at most the given number of bytes
+	EvalHashTable(String name, int bytes) {
+		this.name = name;
+		int entries = Integer.highestOneBit(Math.max(bytes / 16, 1));
+		keys = new long[entries];
+		data = new long[entries];
+		mask = entries - 1;
+	}
+	//---------------------------------------------------
+	// get the score stored for a key, or MISS
+	int probe(long key) {
+		probes.increment();
+		int i = (int)key & mask;
+		long d = data[i];
+		if ((keys[i] ^ d) != key || d == 0)
+			return MISS;
+		hits.increment();
+		return (int)d;
+	}
+	//---------------------------------------------------
+	// store a score for a key, always replacing the old entry
+	void store(long key, int score) {
+		int i = (int)key & mask;
+		long d = (score & 0xffffffffL) | (1L << 32);   // high bit marks the slot as used
+		data[i] = d;
+		keys[i] = key ^ d;
+	}
+	//---------------------------------------------------
+	void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(data, 0);
+		probes.reset();
+		hits.reset();
+	}
+	//---------------------------------------------------
+	double hitRate() {
+		long p = probes.sum();
+		return p == 0 ? 0 : (double)hits.sum() / p;
+	}
+	//---------------------------------------------------
+	@Override
+	public String toString() {
+		return String.format("%s: %d entries, %d probes, %.1f%% hits", name, keys.length, probes.sum(), 100 * hitRate());
+	}
+}
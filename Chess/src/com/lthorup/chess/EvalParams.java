@@ -0,0 +1,119 @@
+package com.lthorup.chess;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+//-------------------------------------------------------
+// The tunable evaluation weights. The engine starts with the
+// hand picked defaults and replaces them with the contents of
+// a parameter file (written by EvalTuner) if one is present.
+public class EvalParams {
+
+	public static final String DEFAULT_FILE = "chess.params";
+
+	//---------------------------------------------------
+	// names of the tunable weights, in feature order
+	static final String[] NAMES = { "pawn", "knight", "bishop", "rook", "queen", "doubled", "isolated", "passed" };
+	static final ChessPiece[] WHITE_PIECES = { ChessPiece.WhitePawn, ChessPiece.WhiteKnight, ChessPiece.WhiteBishop, ChessPiece.WhiteRook, ChessPiece.WhiteQueen };
+	static final ChessPiece[] BLACK_PIECES = { ChessPiece.BlackPawn, ChessPiece.BlackKnight, ChessPiece.BlackBishop, ChessPiece.BlackRook, ChessPiece.BlackQueen };
+
+	//---------------------------------------------------
+	// get the current weights
+	static int[] weights() {
+		int[] w = new int[NAMES.length];
+		for (int i = 0; i < WHITE_PIECES.length; i++)
+			w[i] = WHITE_PIECES[i].value();
+		System.arraycopy(PawnStructure.weights, 0, w, WHITE_PIECES.length, PawnStructure.weights.length);
+		return w;
+	}
+	//---------------------------------------------------
+	// replace the current weights
+	static void setWeights(int[] w) {
+		for (int i = 0; i < WHITE_PIECES.length; i++) {
+			WHITE_PIECES[i].setValue(w[i]);
+			BLACK_PIECES[i].setValue(w[i]);
+		}
+		System.arraycopy(w, WHITE_PIECES.length, PawnStructure.weights, 0, PawnStructure.weights.length);
+
+		// cached scores were computed with the old weights
+		ChessBoard.pawnTable.clear();
+		ChessBoard.evalTable.clear();
+	}
+	//---------------------------------------------------
+	// Get the evaluation features of a board. The static evaluation
+	// (without the check mate term) is the dot product of these
+	// features with the weights.
+	static int[] features(ChessBoard board) {
+		int[] f = new int[NAMES.length];
+		for (int y = 0; y < 8; y++)
+			for (int x = 0; x < 8; x++) {
+				ChessPiece piece = board.get(x, y);
+				for (int i = 0; i < WHITE_PIECES.length; i++) {
+					if (piece == WHITE_PIECES[i])
+						f[i]++;
+					else if (piece == BLACK_PIECES[i])
+						f[i]--;
+				}
+			}
+		int[] pawns = PawnStructure.features(board);
+		System.arraycopy(pawns, 0, f, WHITE_PIECES.length, pawns.length);
+		return f;
+	}
+	//---------------------------------------------------
+	// load weights from a parameter file, missing entries keep their current value
+	public static void load(File file) throws IOException {
+		Properties props = new Properties();
+		try (InputStream in = new FileInputStream(file)) {
+			props.load(in);
+		}
+		int[] w = weights();
+		for (int i = 0; i < NAMES.length; i++)
+			w[i] = parse(props, NAMES[i], w[i]);
+		setWeights(w);
+		ChessBoard.CHECKMATE_VALUE = parse(props, "checkmate", ChessBoard.CHECKMATE_VALUE);
+	}
+	//---------------------------------------------------
+	// save the current weights to a parameter file
+	public static void save(File file, String comment) throws IOException {
+		Properties props = new Properties();
+		int[] w = weights();
+		for (int i = 0; i < NAMES.length; i++)
+			props.setProperty(NAMES[i], Integer.toString(w[i]));
+		props.setProperty("checkmate", Integer.toString(ChessBoard.CHECKMATE_VALUE));
+		try (OutputStream out = new FileOutputStream(file)) {
+			props.store(out, comment);
+		}
+	}
+	//---------------------------------------------------
+	// load the default parameter file if it exists, returns true if loaded
+	public static boolean loadDefault() {
+		File file = new File(DEFAULT_FILE);
+		if (!file.exists())
+			return false;
+		try {
+			load(file);
+			return true;
+		}
+		catch (IOException | IllegalArgumentException e) {
+			System.err.println("unable to load " + file + ": " + e.getMessage());
+			return false;
+		}
+	}
+	//---------------------------------------------------
+	private static int parse(Properties props, String name, int defaultValue) {
+		String s = props.getProperty(name);
+		if (s == null)
+			return defaultValue;
+		try {
+			return Integer.parseInt(s.trim());
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("bad value for " + name + ": " + s);
+		}
+	}
+}
@@ -0,0 +1,273 @@
+package com.lthorup.chess;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+//-------------------------------------------------------
+// Offline Texel style tuner for the evaluation weights.
+//
+// Reads a file of labelled positions, one per line, as a FEN
+// followed by the game result ("1-0", "0-1", "1/2-1/2" or 1.0, 0.5, 0.0,
+// optionally quoted or bracketed and separated by ';'), and minimizes
+// the squared error between the game result and a sigmoid of the
+// static evaluation. The error and gradient are computed in parallel
+// across all cores and the weights are fitted with Adam gradient descent.
+// Files with the PackedPosition extension are read as self-play data.
+//
+// usage: EvalTuner <positions> <output params> [iterations]
+public class EvalTuner {
+
+	final static int BATCH_SIZE = 1 << 16;   // lines parsed in parallel at a time
+	final static int CHUNK_SIZE = 1 << 14;   // positions per parallel error task
+
+	// The positions are reduced to their features as they are read,
+	// so each position only takes FEATURES + 1 bytes of memory.
+	final int FEATURES = EvalParams.NAMES.length;
+	byte[] features = new byte[FEATURES * 1024];
+	byte[] results = new byte[1024];   // result from white's point of view in half points (0, 1, 2)
+	int count = 0;
+	int skipped = 0;
+
+	//---------------------------------------------------
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: EvalTuner <positions> <output params> [iterations]");
+			System.exit(1);
+		}
+		int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+		// start from the current parameter file if there is one
+		EvalParams.loadDefault();
+
+		EvalTuner tuner = new EvalTuner();
+		long start = System.currentTimeMillis();
+		tuner.read(args[0]);
+		System.out.printf("read %d positions (%d skipped) in %.1f s%n", tuner.count, tuner.skipped, (System.currentTimeMillis() - start) / 1000.0);
+		if (tuner.count == 0)
+			return;
+
+		double[] w = toDouble(EvalParams.weights());
+		double k = tuner.fitK(w);
+		System.out.printf("K = %.3f, initial error = %.6f%n", k, tuner.error(w, k, null));
+
+		tuner.tune(w, k, iterations);
+
+		int[] tuned = new int[w.length];
+		for (int i = 0; i < w.length; i++)
+			tuned[i] = (int)Math.round(w[i]);
+		EvalParams.setWeights(tuned);
+		EvalParams.save(new File(args[1]), "tuned on " + tuner.count + " positions from " + args[0]);
+		System.out.println("tuned weights " + Arrays.toString(tuned) + " written to " + args[1]);
+	}
+
+	//---------------------------------------------------
+	// Stream the position file, parsing each batch of lines in parallel.
+	void read(String path) throws IOException {
+		if (path.endsWith(PackedPosition.EXTENSION)) {
+			readPacked(path);
+			return;
+		}
+		try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.ISO_8859_1)) {
+			ArrayList<String> batch = new ArrayList<String>(BATCH_SIZE);
+			String line;
+			while ((line = reader.readLine()) != null) {
+				batch.add(line);
+				if (batch.size() == BATCH_SIZE) {
+					addBatch(batch);
+					batch.clear();
+				}
+			}
+			addBatch(batch);
+		}
+	}
+	//---------------------------------------------------
+	// Positions written by SelfPlayGenerator go through the same parser
+	// as labelled FEN lines.
+	private void readPacked(String path) throws IOException {
+		final String[] RESULTS = { "0-1", "1/2-1/2", "1-0" };
+		try (PackedPositionReader reader = new PackedPositionReader(Paths.get(path))) {
+			ArrayList<String> batch = new ArrayList<String>(BATCH_SIZE);
+			PackedPosition pos = new PackedPosition();
+			while (reader.next(pos)) {
+				batch.add(pos.toFen() + ";" + RESULTS[pos.result]);
+				if (batch.size() == BATCH_SIZE) {
+					addBatch(batch);
+					batch.clear();
+				}
+			}
+			addBatch(batch);
+		}
+	}
+	//---------------------------------------------------
+	private void addBatch(ArrayList<String> lines) {
+		int n = lines.size();
+		byte[] f = new byte[n * FEATURES];
+		byte[] r = new byte[n];
+		IntStream.range(0, n).parallel().forEach(i -> {
+			r[i] = (byte)parse(lines.get(i), f, i * FEATURES);
+		});
+
+		// append the valid positions
+		for (int i = 0; i < n; i++) {
+			if (r[i] < 0) {
+				skipped++;
+				continue;
+			}
+			if (count == results.length) {
+				results = Arrays.copyOf(results, count * 2);
+				features = Arrays.copyOf(features, count * 2 * FEATURES);
+			}
+			System.arraycopy(f, i * FEATURES, features, count * FEATURES, FEATURES);
+			results[count++] = r[i];
+		}
+	}
+	//---------------------------------------------------
+	// Parse a labelled position into its features, returning the result
+	// in half points or -1 if the line can't be used.
+	int parse(String line, byte[] f, int offset) {
+		line = line.trim();
+		if (line.isEmpty() || line.startsWith("#"))
+			return -1;
+		while (line.endsWith(";"))
+			line = line.substring(0, line.length() - 1).trim();
+		int split = line.lastIndexOf(';');
+		if (split < 0)
+			split = line.lastIndexOf(' ');
+		if (split < 0)
+			return -1;
+		int result = parseResult(line.substring(split + 1));
+		if (result < 0)
+			return -1;
+		String fen = line.substring(0, split).trim();
+		if (fen.endsWith(" c9"))   // EPD result opcode
+			fen = fen.substring(0, fen.length() - 3);
+
+		try {
+			ChessBoard board = new ChessBoard(fen);
+
+			// mate and stalemate positions aren't scored by the weights
+			if (board.isCheckMate())
+				return -1;
+			int[] values = EvalParams.features(board);
+			for (int i = 0; i < values.length; i++)
+				f[offset + i] = (byte)values[i];
+			return result;
+		}
+		catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+			return -1;
+		}
+	}
+	//---------------------------------------------------
+	static int parseResult(String s) {
+		s = s.replace("\"", "").replace("[", "").replace("]", "").replace(";", "").trim();
+		switch (s) {
+		case "1-0": case "1.0": return 2;
+		case "0-1": case "0.0": return 0;
+		case "1/2-1/2": case "0.5": return 1;
+		default: return -1;
+		}
+	}
+
+	//---------------------------------------------------
+	// Mean squared error of the weights over all positions. If grad is
+	// not null it is filled with the gradient of the error.
+	double error(double[] w, double k, double[] grad) {
+		int chunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		double[] total = IntStream.range(0, chunks).parallel()
+				.mapToObj(c -> chunkError(w, k, c * CHUNK_SIZE, Math.min(count, (c + 1) * CHUNK_SIZE), grad != null))
+				.reduce(new double[FEATURES + 1], EvalTuner::add);
+		if (grad != null)
+			for (int i = 0; i < FEATURES; i++)
+				grad[i] = total[i + 1] / count;
+		return total[0] / count;
+	}
+	//---------------------------------------------------
+	// error sum (index 0) and gradient sums (index 1..) for a range of positions
+	private double[] chunkError(double[] w, double k, int from, int to, boolean withGradient) {
+		double[] sum = new double[FEATURES + 1];
+		double scale = k * Math.log(10) / 400;
+		for (int p = from; p < to; p++) {
+			int offset = p * FEATURES;
+			double eval = 0;
+			for (int i = 0; i < FEATURES; i++)
+				eval += w[i] * features[offset + i];
+			double s = sigmoid(eval, k);
+			double diff = results[p] / 2.0 - s;
+			sum[0] += diff * diff;
+			if (withGradient) {
+				double g = -2 * diff * s * (1 - s) * scale;
+				for (int i = 0; i < FEATURES; i++)
+					sum[i + 1] += g * features[offset + i];
+			}
+		}
+		return sum;
+	}
+	//---------------------------------------------------
+	private static double[] add(double[] a, double[] b) {
+		double[] sum = new double[a.length];
+		for (int i = 0; i < a.length; i++)
+			sum[i] = a[i] + b[i];
+		return sum;
+	}
+	//---------------------------------------------------
+	static double sigmoid(double eval, double k) {
+		return 1.0 / (1.0 + Math.pow(10, -k * eval / 400));
+	}
+
+	//---------------------------------------------------
+	// Find the sigmoid scale K that best fits the starting weights,
+	// so the tuning doesn't just rescale all the weights.
+	double fitK(double[] w) {
+		double lo = 0.05, hi = 5.0;
+		for (int i = 0; i < 40; i++) {
+			double m1 = lo + (hi - lo) / 3;
+			double m2 = hi - (hi - lo) / 3;
+			if (error(w, m1, null) < error(w, m2, null))
+				hi = m2;
+			else
+				lo = m1;
+		}
+		return (lo + hi) / 2;
+	}
+	//---------------------------------------------------
+	// Adam gradient descent on the weights
+	void tune(double[] w, double k, int iterations) {
+		final double rate = 2.0;
+		final double beta1 = 0.9, beta2 = 0.999, epsilon = 1e-12;
+		double[] grad = new double[FEATURES];
+		double[] m = new double[FEATURES];
+		double[] v = new double[FEATURES];
+		for (int t = 1; t <= iterations; t++) {
+			double e = error(w, k, grad);
+			for (int i = 0; i < FEATURES; i++) {
+				m[i] = beta1 * m[i] + (1 - beta1) * grad[i];
+				v[i] = beta2 * v[i] + (1 - beta2) * grad[i] * grad[i];
+				double mHat = m[i] / (1 - Math.pow(beta1, t));
+				double vHat = v[i] / (1 - Math.pow(beta2, t));
+				w[i] -= rate * mHat / (Math.sqrt(vHat) + epsilon);
+			}
+			if (t % 50 == 0 || t == iterations)
+				System.out.printf("iteration %d: error = %.6f %s%n", t, e, format(w));
+		}
+	}
+	//---------------------------------------------------
+	private static double[] toDouble(int[] w) {
+		double[] d = new double[w.length];
+		for (int i = 0; i < w.length; i++)
+			d[i] = w[i];
+		return d;
+	}
+	private static String format(double[] w) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < w.length; i++)
+			sb.append(EvalParams.NAMES[i]).append('=').append(Math.round(w[i])).append(' ');
+		return sb.toString().trim();
+	}
+}
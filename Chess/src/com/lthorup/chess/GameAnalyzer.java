@@ -0,0 +1,274 @@
+package com.lthorup.chess;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+//-------------------------------------------------------
+// Bulk game replay analyzer. Games are streamed from a PGN file
+// and replayed in parallel through ChessBoard.attemptMove, gathering:
+//   - position frequencies over the first plies of each game
+//   - an opening book feed (FEN, UCI move, result) over the first plies
+//   - agreement between the played moves and a fixed depth engine search
+//
+// Games are replayed until the first move the engine can't represent
+// (castling, en passant, under promotion), which is counted as truncated.
+//
+// Position frequencies are kept in a fixed size table, so memory stays
+// constant however large the archive is. When the table is full the
+// least frequent position of a bucket is replaced, and the newcomer
+// inherits its count (space saving), so frequent positions are never
+// lost but counts outside the top are upper bounds.
+//
+// usage: GameAnalyzer <pgn file> [-threads n] [-plies n] [-book file] [-agree n] [-top n] [-positions n]
+public class GameAnalyzer {
+
+	int threads = Runtime.getRuntime().availableProcessors();
+	int positionPlies = 20;     // plies per game counted for frequency/book
+	int agreementPlies = 0;     // plies per game searched for engine agreement (0 = off)
+	int top = 20;               // most frequent positions to report
+	int tableSize = 1 << 20;    // positions tracked for frequencies
+	Writer book;
+
+	AtomicLong games = new AtomicLong();
+	AtomicLong plies = new AtomicLong();
+	AtomicLong truncated = new AtomicLong();
+	AtomicLong searched = new AtomicLong();
+	AtomicLong agreed = new AtomicLong();
+	PositionTable positions;
+	AtomicReference<Exception> failure = new AtomicReference<Exception>();   // first worker error
+
+	static final PgnGame END = new PgnGame();
+
+	//---------------------------------------------------
+	// Bounded position counter. Each entry holds the position key, its
+	// count and the board packed as a PackedPosition, which is only turned
+	// back into a FEN for the reported positions. Buckets of WAYS entries
+	// are guarded by striped locks.
+	static class PositionTable {
+		static final int WAYS = 4;
+		static final int LOCKS = 256;
+
+		final long[] keys;
+		final long[] counts;
+		final byte[] boards;
+		final int mask;
+		final Object[] locks = new Object[LOCKS];
+		final AtomicLong evictions = new AtomicLong();
+
+		PositionTable(int entries) {
+			int buckets = Integer.highestOneBit(Math.max(entries / WAYS, 1));
+			keys = new long[buckets * WAYS];
+			counts = new long[buckets * WAYS];
+			boards = new byte[buckets * WAYS * PackedPosition.SIZE];
+			mask = buckets - 1;
+			for (int i = 0; i < LOCKS; i++)
+				locks[i] = new Object();
+		}
+		//---------------------------------------------------
+		void add(ChessBoard board, int ply) {
+			long key = board.hash();
+			int bucket = (int)(key ^ (key >>> 32)) & mask;
+			int first = bucket * WAYS;
+			synchronized (locks[bucket & (LOCKS - 1)]) {
+				int slot = -1;
+				for (int i = first; i < first + WAYS; i++) {
+					if (counts[i] > 0 && keys[i] == key) {
+						counts[i]++;
+						return;
+					}
+					if (slot < 0 || counts[i] < counts[slot])
+						slot = i;
+				}
+				if (counts[slot] > 0)
+					evictions.incrementAndGet();
+				keys[slot] = key;
+				counts[slot]++;
+				PackedPosition.write(ByteBuffer.wrap(boards, slot * PackedPosition.SIZE, PackedPosition.SIZE), board, 0, board.halfmoveClock(), ply);
+			}
+		}
+		//---------------------------------------------------
+		int size() {
+			int n = 0;
+			for (long c : counts)
+				if (c > 0)
+					n++;
+			return n;
+		}
+		//---------------------------------------------------
+		// slots of the most frequent positions, most frequent first
+		ArrayList<Integer> top(int n) {
+			ArrayList<Integer> slots = new ArrayList<Integer>();
+			for (int i = 0; i < counts.length; i++)
+				if (counts[i] > 0)
+					slots.add(i);
+			slots.sort((a, b) -> Long.compare(counts[b], counts[a]));
+			return new ArrayList<Integer>(slots.subList(0, Math.min(n, slots.size())));
+		}
+		String fen(int slot) {
+			PackedPosition pos = new PackedPosition();
+			pos.read(ByteBuffer.wrap(boards, slot * PackedPosition.SIZE, PackedPosition.SIZE));
+			return pos.toFen();
+		}
+	}
+
+	//---------------------------------------------------
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("usage: GameAnalyzer <pgn file> [-threads n] [-plies n] [-book file] [-agree n] [-top n] [-positions n]");
+			System.exit(1);
+		}
+		EvalParams.loadDefault();
+
+		GameAnalyzer analyzer = new GameAnalyzer();
+		for (int i = 1; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "-threads": analyzer.threads = Integer.parseInt(args[i + 1]); break;
+			case "-plies": analyzer.positionPlies = Integer.parseInt(args[i + 1]); break;
+			case "-agree": analyzer.agreementPlies = Integer.parseInt(args[i + 1]); break;
+			case "-top": analyzer.top = Integer.parseInt(args[i + 1]); break;
+			case "-positions": analyzer.tableSize = Integer.parseInt(args[i + 1]); break;
+			case "-book": analyzer.book = Files.newBufferedWriter(Paths.get(args[i + 1]), StandardCharsets.US_ASCII); break;
+			default:
+				System.err.println("unknown option " + args[i]);
+				System.exit(1);
+			}
+		}
+
+		long start = System.nanoTime();
+		analyzer.run(args[0]);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		Exception failure = analyzer.failure.get();
+		if (analyzer.book != null) {
+			try {
+				analyzer.book.close();
+			}
+			catch (IOException e) {
+				if (failure == null)
+					failure = e;
+			}
+		}
+		if (failure != null) {
+			System.err.println("analysis failed: " + failure);
+			System.exit(1);
+		}
+		analyzer.report(seconds);
+	}
+
+	//---------------------------------------------------
+	// Read games on this thread and hand them to the replay workers
+	// through a bounded queue so memory stays constant. The first worker
+	// error stops the reader; workers keep draining the queue after an
+	// error so the reader can never block on a full queue.
+	void run(String path) throws Exception {
+		positions = new PositionTable(tableSize);
+		BlockingQueue<PgnGame> queue = new ArrayBlockingQueue<PgnGame>(threads * 64);
+		ArrayList<Thread> workers = new ArrayList<Thread>();
+		for (int i = 0; i < threads; i++) {
+			Thread t = new Thread(() -> {
+				try {
+					PgnGame game;
+					while ((game = queue.take()) != END) {
+						if (failure.get() != null)
+							continue;
+						try {
+							replay(game);
+						}
+						catch (IOException | RuntimeException e) {
+							failure.compareAndSet(null, e);
+						}
+					}
+				}
+				catch (InterruptedException e) {}
+			});
+			t.start();
+			workers.add(t);
+		}
+
+		try (PgnReader reader = new PgnReader(Paths.get(path))) {
+			PgnGame game;
+			while (failure.get() == null && (game = reader.next()) != null)
+				queue.put(game);
+		}
+		finally {
+			for (int i = 0; i < threads; i++)
+				queue.put(END);
+			for (Thread t : workers)
+				t.join();
+		}
+	}
+
+	//---------------------------------------------------
+	// replay one game, gathering the statistics
+	void replay(PgnGame game) throws IOException {
+		games.incrementAndGet();
+		ChessBoard board;
+		try {
+			board = game.startBoard();
+		}
+		catch (IllegalArgumentException e) {
+			truncated.incrementAndGet();
+			return;
+		}
+
+		StringBuilder bookLines = book != null ? new StringBuilder() : null;
+		int ply = 0;
+		for (String san : game.moves) {
+			ChessMove move = ChessNotation.parseSan(board, san);
+			if (move == null) {
+				truncated.incrementAndGet();
+				break;
+			}
+
+			if (ply < positionPlies) {
+				positions.add(board, ply);
+				if (bookLines != null)
+					bookLines.append(board.toFen()).append('\t').append(ChessNotation.toUci(board, move)).append('\t').append(game.result).append('\n');
+			}
+
+			// search before playing the move, the search needs this board to be the current position
+			ArrayList<ChessBoard> best = ply < agreementPlies ? board.aiBestMoves() : null;
+			ChessBoard next = board.attemptMove(move);
+			if (best != null) {
+				searched.incrementAndGet();
+				if (best.contains(next))
+					agreed.incrementAndGet();
+			}
+			board = next;
+			ply++;
+		}
+		plies.addAndGet(ply);
+
+		if (bookLines != null && bookLines.length() > 0) {
+			synchronized (book) {
+				book.write(bookLines.toString());
+			}
+		}
+	}
+
+	//---------------------------------------------------
+	void report(double seconds) {
+		System.out.printf("%d games, %d plies in %.1f s: %.0f games/s, %.0f plies/s%n",
+				games.get(), plies.get(), seconds, games.get() / seconds, plies.get() / seconds);
+		System.out.printf("%d games truncated at an unsupported or illegal move%n", truncated.get());
+		if (searched.get() > 0) {
+			System.out.printf("engine agreement: %d / %d (%.1f%%)%n", agreed.get(), searched.get(), 100.0 * agreed.get() / searched.get());
+			System.out.println(ChessBoard.stats);
+			System.out.println(ChessBoard.pawnTable);
+			System.out.println(ChessBoard.evalTable);
+		}
+
+		System.out.printf("%d positions tracked in the first %d plies (%d evicted), most frequent:%n",
+				positions.size(), positionPlies, positions.evictions.get());
+		for (int slot : positions.top(top))
+			System.out.printf("%10d  %s%n", positions.counts[slot], positions.fen(slot));
+	}
+}
@@ -0,0 +1,397 @@
+package com.lthorup.chess;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+//-------------------------------------------------------
+// Mate finder using depth-first proof-number search (df-pn).
+//
+// The side to move at the root is the attacker. A position is proven
+// when the attacker can force mate within the ply limit and disproven
+// when the defender can avoid it. Every node carries a proof number
+// (how many leaves still need proving) and a disproof number, and the
+// search always expands the most proving child while both numbers stay
+// under the thresholds passed down from its parent. Initial numbers
+// come from mobility, so checks and moves that leave the defender few
+// replies are searched first, which lets forced mates far beyond the
+// alpha-beta depth be found quickly.
+//
+// Nodes are built with new ChessBoard(parent, move) and dropped when
+// their subtree returns instead of being kept as cached children, so
+// the memory used is the bounded transposition table plus the path.
+// The table has two entry buckets keyed by position and remaining
+// plies: one slot keeps the entry that took the most work, the other
+// is always replaced. Repetitions on the path and fifty move draws
+// count as failures for the attacker.
+//
+// usage: MateSearch <fen | file of fens> [-plies n] [-nodes n] [-time ms] [-mb n]
+public class MateSearch {
+
+	//---------------------------------------------------
+	public enum Outcome { Mate, NoMate, Unknown }
+
+	//---------------------------------------------------
+	// result of a search from a root position
+	public static class Result {
+		public final Outcome outcome;
+		public final List<ChessMove> line;   // mating line from the root, if a mate was found
+		public final long nodes;
+		public final long millis;
+		Result(Outcome outcome, List<ChessMove> line, long nodes, long millis) {
+			this.outcome = outcome; this.line = line; this.nodes = nodes; this.millis = millis;
+		}
+		// number of moves (not plies) to mate
+		public int mateIn() {
+			return (line.size() + 1) / 2;
+		}
+	}
+
+	static final int INF = 100000000;
+	static final int ENTRY_BYTES = 24;
+
+	private final long[] keys;
+	private final int[] data;   // pn, dn, mate distance and work per entry
+	private final int mask;
+
+	private int maxPlies = 31;
+	private long maxNodes = 1000000;
+	private long maxMillis = 0;     // no time limit
+
+	private long nodes;
+	private long nodeLimit;
+	private long deadline;
+	private boolean aborted;
+	private long[] path;
+
+	// child values from init()
+	private int initPn, initDn, initDist;
+
+	//---------------------------------------------------
+	// create a mate searcher with a table of about the given size
+	public MateSearch(int bytes) {
+		int buckets = Integer.highestOneBit(Math.max(bytes / (2 * ENTRY_BYTES), 1));
+		keys = new long[2 * buckets];
+		data = new int[8 * buckets];
+		mask = buckets - 1;
+	}
+	//---------------------------------------------------
+	// Limits: the longest line searched in plies (2n - 1 for mate in n),
+	// the number of nodes created and the time in milliseconds (0 for none).
+	public MateSearch limits(int maxPlies, long maxNodes, long maxMillis) {
+		this.maxPlies = maxPlies;
+		this.maxNodes = maxNodes;
+		this.maxMillis = maxMillis;
+		return this;
+	}
+
+	//---------------------------------------------------
+	// Look for a forced mate by the side to move. The table is cleared
+	// first, since its entries depend on the limits of the last search.
+	public synchronized Result solve(ChessBoard root) {
+		long start = System.currentTimeMillis();
+		Arrays.fill(keys, 0);
+		nodes = 0;
+		budget();
+		path = new long[maxPlies + 2];
+		path[0] = root.hash();
+
+		ArrayList<ChessMove> line = new ArrayList<ChessMove>();
+		Outcome outcome = Outcome.Unknown;
+		if (root.getValidMoves().size() == 0 || root.isFiftyMoveDraw())
+			outcome = Outcome.NoMate;
+		else {
+			int[] out = new int[3];
+			mid(root, true, maxPlies, INF - 1, INF - 1, 0, out);
+			if (out[0] == 0) {
+				outcome = Outcome.Mate;
+				line = line(root);
+			}
+			else if (out[1] == 0)
+				outcome = Outcome.NoMate;
+		}
+		return new Result(outcome, line, nodes, System.currentTimeMillis() - start);
+	}
+
+	//---------------------------------------------------
+	// give the next search the full node and time limits
+	private void budget() {
+		aborted = false;
+		nodeLimit = nodes + maxNodes;
+		deadline = maxMillis > 0 ? System.currentTimeMillis() + maxMillis : Long.MAX_VALUE;
+	}
+
+	//---------------------------------------------------
+	// Multiple iterative deepening: search the node until its proof or
+	// disproof number reaches its threshold. out receives pn, dn and,
+	// for a proven node, its distance to mate in plies.
+	private void mid(ChessBoard board, boolean or, int remaining, int thPn, int thDn, int ply, int[] out) {
+		ArrayList<ChessMove> moves = board.getValidMoves();
+		int n = moves.size();
+		ChessBoard[] children = new ChessBoard[n];
+		int[] cpn = new int[n];
+		int[] cdn = new int[n];
+		int[] cdist = new int[n];
+		long startNodes = nodes;
+		for (int i = 0; i < n; i++) {
+			children[i] = new ChessBoard(board, moves.get(i));
+			init(children[i], !or, remaining - 1, ply + 1);
+			cpn[i] = initPn;
+			cdn[i] = initDn;
+			cdist[i] = initDist;
+		}
+		nodes += n;
+
+		int pn, dn, dist;
+		while (true) {
+			// combine the children: an OR node needs one proven child, an AND node all of them
+			pn = or ? INF : 0;
+			dn = or ? 0 : INF;
+			dist = or ? INF : 0;
+			for (int i = 0; i < n; i++) {
+				if (or) {
+					pn = Math.min(pn, cpn[i]);
+					dn = add(dn, cdn[i]);
+					if (cpn[i] == 0)
+						dist = Math.min(dist, cdist[i] + 1);
+				}
+				else {
+					pn = add(pn, cpn[i]);
+					dn = Math.min(dn, cdn[i]);
+					dist = Math.max(dist, cdist[i] + 1);
+				}
+			}
+			if (pn >= thPn || dn >= thDn || aborted)
+				break;
+			if (nodes >= nodeLimit || System.currentTimeMillis() > deadline) {
+				aborted = true;
+				break;
+			}
+
+			// the most proving child, and the thresholds that would make another child better
+			int best = 0, second = INF;
+			for (int i = 1; i < n; i++) {
+				int v = or ? cpn[i] : cdn[i];
+				int b = or ? cpn[best] : cdn[best];
+				if (v < b) {
+					second = b;
+					best = i;
+				}
+				else if (v < second)
+					second = v;
+			}
+			int childThPn, childThDn;
+			if (or) {
+				childThPn = Math.min(thPn, add(second, 1));
+				childThDn = add(thDn - dn, cdn[best]);
+			}
+			else {
+				childThPn = add(thPn - pn, cpn[best]);
+				childThDn = Math.min(thDn, add(second, 1));
+			}
+
+			path[ply + 1] = children[best].hash();
+			mid(children[best], !or, remaining - 1, childThPn, childThDn, ply + 1, out);
+			cpn[best] = out[0];
+			cdn[best] = out[1];
+			cdist[best] = out[2];
+		}
+
+		if (pn != 0)
+			dist = 0;
+		store(key(board.hash(), remaining), pn, dn, dist, nodes - startNodes);
+		out[0] = pn;
+		out[1] = dn;
+		out[2] = dist;
+	}
+
+	//---------------------------------------------------
+	// Initial numbers of a new node (initPn, initDn, initDist), from the
+	// game rules, the table or its mobility.
+	private void init(ChessBoard board, boolean or, int remaining, int ply) {
+		initDist = 0;
+		int moves = board.getValidMoves().size();
+		if (moves == 0) {
+			// the side to move is mated or stalemated
+			boolean mated = !board.isStaleMate();
+			setInit(mated && !or ? 0 : INF, mated && !or ? INF : 0);
+			return;
+		}
+		// a draw, or too late to mate in the remaining plies
+		if (board.isFiftyMoveDraw() || remaining < (or ? 1 : 2)) {
+			setInit(INF, 0);
+			return;
+		}
+		for (int p = ply - 2; p >= 0; p -= 2)
+			if (path[p] == board.hash()) {
+				setInit(INF, 0);
+				return;
+			}
+		int slot = probe(key(board.hash(), remaining));
+		if (slot >= 0) {
+			setInit(data[4 * slot], data[4 * slot + 1]);
+			initDist = data[4 * slot + 2];
+		}
+		else if (or)
+			setInit(1, moves);
+		else
+			setInit(moves, 1);
+	}
+	private void setInit(int pn, int dn) {
+		initPn = pn;
+		initDn = dn;
+	}
+
+	//---------------------------------------------------
+	// Follow the proof from the root: the quickest mate for the attacker
+	// and the longest defence for the defender. Proofs that were evicted
+	// from the table are searched again, with a fresh node and time
+	// budget since the proof may have used up the first one. The line
+	// is cut short (possibly empty) if that budget runs out as well.
+	private ArrayList<ChessMove> line(ChessBoard root) {
+		budget();
+		ArrayList<ChessMove> line = new ArrayList<ChessMove>();
+		ChessBoard board = root;
+		boolean or = true;
+		int remaining = maxPlies;
+		int[] out = new int[3];
+		for (int ply = 0; board.getValidMoves().size() > 0; ply++) {
+			ArrayList<ChessMove> moves = board.getValidMoves();
+			ChessBoard next = null;
+			ChessMove nextMove = null;
+			int nextDist = 0;
+			for (int pass = 0; pass < 2 && next == null; pass++) {
+				// the attacker's proving child is only searched for if it was evicted
+				if (pass == 1) {
+					if (!or)
+						break;
+					mid(board, true, remaining, INF - 1, INF - 1, ply, out);
+				}
+				for (int i = 0; i < moves.size(); i++) {
+					ChessBoard child = new ChessBoard(board, moves.get(i));
+					init(child, !or, remaining - 1, ply + 1);
+					int pn = initPn, dist = initDist;
+					if (!or && pn != 0 && initDn != 0) {
+						path[ply + 1] = child.hash();
+						mid(child, true, remaining - 1, INF - 1, INF - 1, ply + 1, out);
+						pn = out[0];
+						dist = out[2];
+					}
+					if (pn != 0)
+						continue;
+					if (next == null || (or ? dist < nextDist : dist > nextDist)) {
+						next = child;
+						nextMove = moves.get(i);
+						nextDist = dist;
+					}
+				}
+			}
+			if (next == null)
+				break;   // only possible if the search ran out of nodes
+			line.add(nextMove);
+			path[ply + 1] = next.hash();
+			board = next;
+			or = !or;
+			remaining--;
+		}
+		return line;
+	}
+
+	//---------------------------------------------------
+	// transposition table
+	private static long key(long hash, int remaining) {
+		return hash ^ (remaining * 0x9E3779B97F4A7C15L);
+	}
+	private int probe(long key) {
+		int b = 2 * (int)(key & mask);
+		if (keys[b] == key && key != 0)
+			return b;
+		if (keys[b + 1] == key && key != 0)
+			return b + 1;
+		return -1;
+	}
+	private void store(long key, int pn, int dn, int dist, long work) {
+		int b = 2 * (int)(key & mask);
+		int w = (int)Math.min(work, Integer.MAX_VALUE);
+		int slot;
+		if (keys[b] == key)
+			slot = b;
+		else if (keys[b + 1] == key)
+			slot = b + 1;
+		else if (w >= data[4 * b + 3]) {
+			// demote the old work preferred entry to the always replace slot
+			keys[b + 1] = keys[b];
+			System.arraycopy(data, 4 * b, data, 4 * (b + 1), 4);
+			slot = b;
+		}
+		else
+			slot = b + 1;
+		keys[slot] = key;
+		data[4 * slot] = pn;
+		data[4 * slot + 1] = dn;
+		data[4 * slot + 2] = dist;
+		data[4 * slot + 3] = w;
+	}
+	private static int add(int a, int b) {
+		return (int)Math.min((long)a + b, INF);
+	}
+
+	//---------------------------------------------------
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: MateSearch <fen | file of fens> [-plies n] [-nodes n] [-time ms] [-mb n]");
+			System.exit(1);
+		}
+		int plies = 31, mb = 64;
+		long maxNodes = 10000000, millis = 0;
+		for (int i = 1; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "-plies": plies = Integer.parseInt(args[i + 1]); break;
+			case "-nodes": maxNodes = Long.parseLong(args[i + 1]); break;
+			case "-time": millis = Long.parseLong(args[i + 1]); break;
+			case "-mb": mb = Integer.parseInt(args[i + 1]); break;
+			default:
+				System.err.println("unknown option " + args[i]);
+				System.exit(1);
+			}
+		}
+
+		List<String> fens;
+		if (Files.isRegularFile(Paths.get(args[0])))
+			fens = Files.readAllLines(Paths.get(args[0]), StandardCharsets.ISO_8859_1);
+		else
+			fens = Collections.singletonList(args[0]);
+
+		MateSearch search = new MateSearch(mb << 20).limits(plies, maxNodes, millis);
+		for (String fen : fens) {
+			fen = fen.trim();
+			if (fen.isEmpty() || fen.startsWith("#"))
+				continue;
+			ChessBoard board;
+			try {
+				board = new ChessBoard(fen);
+			}
+			catch (IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+				continue;
+			}
+			Result r = search.solve(board);
+			StringBuilder sb = new StringBuilder();
+			if (r.outcome == Outcome.Mate) {
+				sb.append("mate in ").append(r.mateIn()).append(':');
+				for (ChessMove m : r.line) {
+					sb.append(' ').append(ChessNotation.toSan(board, m));
+					board = board.attemptMove(m);
+				}
+			}
+			else
+				sb.append(r.outcome == Outcome.NoMate ? "no mate within " + plies + " plies" : "unknown (limit reached)");
+			System.out.printf("%s%n  %s  (%d nodes, %d ms)%n", fen, sb, r.nodes, r.millis);
+		}
+	}
+}
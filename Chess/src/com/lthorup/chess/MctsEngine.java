@@ -0,0 +1,212 @@
+package com.lthorup.chess;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//-------------------------------------------------------
+// Multi-threaded Monte Carlo tree search engine.
+//
+// Every thread repeatedly walks down the tree with UCT, evaluates the
+// leaf it reaches with the static evaluation (squashed to a win
+// probability) and backs the result up the path. A virtual loss is
+// added to each node on the way down and removed on the way back, so
+// threads spread out over different lines instead of all following
+// the same best path.
+//
+// The tree lives in a fixed size arena of int indexed nodes whose
+// statistics are atomic arrays, so there are no locks: a node is
+// expanded by the thread that wins a CAS on its first child slot,
+// and its children are published by writing that slot. Nodes hold
+// only the index of their move, and the boards are rebuilt along
+// the path with new ChessBoard(parent, move), so memory is bounded by
+// the arena. When the arena is full the tree stops growing and the
+// remaining simulations refine the existing nodes.
+//
+// Repetitions inside the tree aren't detected, only the fifty move rule.
+public class MctsEngine implements SearchEngine {
+
+	static final double EXPLORATION = 1.4;
+	static final int VIRTUAL_LOSS = 3;
+	static final double EVAL_SCALE = 400;      // centipawns for a 1 : 10 win ratio
+	static final long ONE = 1 << 16;           // fixed point result of a win
+
+	// first child slot of a node that has no children yet
+	static final int UNEXPANDED = 0;
+	static final int EXPANDING = -1;
+	static final int LEAF = -2;                // terminal, or no room left in the arena
+
+	private final int threads;
+	private final long millis;
+	private final int maxSimulations;
+	private final int capacity;
+
+	private final AtomicIntegerArray firstChild;
+	private final int[] childCount;
+	private final int[] moveIndex;             // index of the node's move in its parent's valid moves
+	private final AtomicIntegerArray visits;
+	private final AtomicIntegerArray virtual;
+	private final AtomicLongArray results;     // sum of results for the player who moved into the node
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicInteger simulations = new AtomicInteger();
+
+	//---------------------------------------------------
+	// Search with the given number of threads for the given time or
+	// number of simulations per move, with room for capacity nodes.
+	public MctsEngine(int threads, long millis, int maxSimulations, int capacity) {
+		this.threads = threads;
+		this.millis = millis;
+		this.maxSimulations = maxSimulations;
+		this.capacity = capacity;
+		firstChild = new AtomicIntegerArray(capacity);
+		childCount = new int[capacity];
+		moveIndex = new int[capacity];
+		visits = new AtomicIntegerArray(capacity);
+		virtual = new AtomicIntegerArray(capacity);
+		results = new AtomicLongArray(capacity);
+	}
+	//---------------------------------------------------
+	// the number of simulations and nodes of the last search
+	public int simulations() {
+		return Math.min(simulations.get(), maxSimulations);
+	}
+	public int nodes() {
+		return Math.min(size.get(), capacity);
+	}
+
+	//---------------------------------------------------
+	@Override
+	public synchronized ChessMove chooseMove(ChessBoard root) {
+		ArrayList<ChessMove> moves = root.getValidMoves();
+		if (moves.size() == 0 || root.isDraw())
+			return null;
+
+		size.set(1);
+		simulations.set(0);
+		reset(0, 0);
+		expand(0, root);
+		if (moves.size() == 1)
+			return moves.get(0);
+
+		long deadline = System.currentTimeMillis() + millis;
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread(() -> {
+				int[] path = new int[64];
+				while (simulations.getAndIncrement() < maxSimulations && System.currentTimeMillis() < deadline)
+					path = simulate(root, path);
+			});
+			workers[i].start();
+		}
+		for (Thread t : workers) {
+			try {
+				t.join();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		// play the most visited move
+		int first = firstChild.get(0), best = first;
+		for (int c = first; c < first + childCount[0]; c++)
+			if (visits.get(c) > visits.get(best))
+				best = c;
+		return moves.get(moveIndex[best]);
+	}
+
+	//---------------------------------------------------
+	// One simulation: select a leaf, expand and evaluate it and back up
+	// the result. Returns the path buffer, which may have grown.
+	private int[] simulate(ChessBoard root, int[] path) {
+		ChessBoard board = root;
+		int node = 0, length = 0;
+		int first;
+		while ((first = firstChild.get(node)) > 0) {
+			node = select(node, first);
+			virtual.addAndGet(node, VIRTUAL_LOSS);
+			board = new ChessBoard(board, board.getValidMoves().get(moveIndex[node]));
+			if (length == path.length)
+				path = Arrays.copyOf(path, length * 2);
+			path[length++] = node;
+		}
+
+		// result for the player who moved into the leaf
+		double result;
+		if (board.getValidMoves().size() == 0) {
+			firstChild.compareAndSet(node, UNEXPANDED, LEAF);
+			result = board.isStaleMate() ? 0.5 : 1.0;
+		}
+		else if (board.isFiftyMoveDraw())
+			result = 0.5;
+		else {
+			// a leaf is expanded on its second visit, so single visits stay cheap
+			if (visits.get(node) > 0)
+				expand(node, board);
+			int value = board.sideToMove() == ChessColor.White ? -board.value() : board.value();
+			result = 1 / (1 + Math.pow(10, -value / EVAL_SCALE));
+		}
+
+		long fixed = Math.round(result * ONE);
+		for (int i = length - 1; i >= 0; i--) {
+			int n = path[i];
+			results.addAndGet(n, fixed);
+			visits.incrementAndGet(n);
+			virtual.addAndGet(n, -VIRTUAL_LOSS);
+			fixed = ONE - fixed;
+		}
+		visits.incrementAndGet(0);
+		return path;
+	}
+	//---------------------------------------------------
+	// the child with the best UCT score, virtual losses counting as lost visits
+	private int select(int node, int first) {
+		double logN = Math.log(Math.max(visits.get(node) + virtual.get(node), 1));
+		int best = first;
+		double bestScore = Double.NEGATIVE_INFINITY;
+		for (int c = first; c < first + childCount[node]; c++) {
+			int n = visits.get(c) + virtual.get(c);
+			if (n == 0)
+				return c;
+			double score = (double)results.get(c) / ONE / n + EXPLORATION * Math.sqrt(logN / n);
+			if (score > bestScore) {
+				bestScore = score;
+				best = c;
+			}
+		}
+		return best;
+	}
+	//---------------------------------------------------
+	// Allocate the node's children if this thread wins the right to
+	// expand it. Other threads treat it as a leaf in the meantime.
+	private void expand(int node, ChessBoard board) {
+		if (!firstChild.compareAndSet(node, UNEXPANDED, EXPANDING))
+			return;
+		int n = board.getValidMoves().size();
+		int first = size.get() + n <= capacity ? size.getAndAdd(n) : capacity;
+		if (first + n > capacity) {
+			firstChild.set(node, LEAF);
+			return;
+		}
+		for (int i = 0; i < n; i++)
+			reset(first + i, i);
+		childCount[node] = n;
+		firstChild.set(node, first);   // publishes the children
+	}
+	private void reset(int node, int move) {
+		firstChild.set(node, UNEXPANDED);
+		childCount[node] = 0;
+		moveIndex[node] = move;
+		visits.set(node, 0);
+		virtual.set(node, 0);
+		results.set(node, 0);
+	}
+
+	//---------------------------------------------------
+	@Override
+	public String toString() {
+		return "MCTS";
+	}
+}
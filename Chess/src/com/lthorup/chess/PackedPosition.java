@@ -0,0 +1,105 @@
+package com.lthorup.chess;
+
+import java.nio.ByteBuffer;
+
+//-------------------------------------------------------
+// A labelled training position packed into 32 bytes:
+//
+//   long   occupancy   bit y * 8 + x set for each occupied square
+//   byte[16] pieces    4 bit ChessPiece ordinals of the occupied squares, in bit order
+//   short  score       search score (centipawns) for the side to move
+//   byte   result      game result for white in half points (0, 1, 2)
+//   byte   flags       bit 0 set if white is to move
+//   byte   halfmove    halfmove clock
+//   short  ply         ply of the position in its game
+//   byte   reserved
+public class PackedPosition {
+
+	public static final int SIZE = 32;
+	public static final String EXTENSION = ".pack";
+	static final int RESULT_OFFSET = 26;
+
+	public long occupancy;
+	public byte[] pieces = new byte[16];
+	public int score;
+	public int result;
+	public boolean whiteToMove;
+	public int halfmove;
+	public int ply;
+
+	//---------------------------------------------------
+	// append a board to the buffer, the result is filled in later with setResult
+	static void write(ByteBuffer buf, ChessBoard board, int score, int halfmove, int ply) {
+		long occupancy = 0;
+		byte[] nibbles = new byte[16];
+		int n = 0;
+		for (int i = 0; i < 64; i++) {
+			ChessPiece piece = board.get(i & 7, i >> 3);
+			if (piece != ChessPiece.Empty) {
+				occupancy |= 1L << i;
+				nibbles[n >> 1] |= (n & 1) == 0 ? piece.ordinal() : piece.ordinal() << 4;
+				n++;
+			}
+		}
+		buf.putLong(occupancy);
+		buf.put(nibbles);
+		buf.putShort((short)Math.max(Math.min(score, Short.MAX_VALUE), -Short.MAX_VALUE));
+		buf.put((byte)0);
+		buf.put((byte)(board.sideToMove() == ChessColor.White ? 1 : 0));
+		buf.put((byte)Math.min(halfmove, 255));
+		buf.putShort((short)Math.min(ply, Short.MAX_VALUE));
+		buf.put((byte)0);
+	}
+	//---------------------------------------------------
+	// set the result of the position starting at the given buffer offset
+	static void setResult(ByteBuffer buf, int offset, int whiteHalfPoints) {
+		buf.put(offset + RESULT_OFFSET, (byte)whiteHalfPoints);
+	}
+	//---------------------------------------------------
+	// read the next position from the buffer into this object
+	void read(ByteBuffer buf) {
+		occupancy = buf.getLong();
+		buf.get(pieces);
+		score = buf.getShort();
+		result = buf.get();
+		whiteToMove = (buf.get() & 1) != 0;
+		halfmove = buf.get() & 0xff;
+		ply = buf.getShort();
+		buf.get();
+	}
+	//---------------------------------------------------
+	// piece on a square
+	public ChessPiece get(int x, int y) {
+		int i = y * 8 + x;
+		if ((occupancy & (1L << i)) == 0)
+			return ChessPiece.Empty;
+		int n = Long.bitCount(occupancy & ((1L << i) - 1));
+		int code = (pieces[n >> 1] >> ((n & 1) * 4)) & 0xf;
+		return ChessPiece.values()[code];
+	}
+	//---------------------------------------------------
+	public String toFen() {
+		StringBuilder sb = new StringBuilder();
+		for (int y = 0; y < 8; y++) {
+			int empty = 0;
+			for (int x = 0; x < 8; x++) {
+				ChessPiece piece = get(x, y);
+				if (piece == ChessPiece.Empty)
+					empty++;
+				else {
+					if (empty > 0)
+						sb.append(empty);
+					empty = 0;
+					sb.append(piece.fen());
+				}
+			}
+			if (empty > 0)
+				sb.append(empty);
+			if (y < 7)
+				sb.append('/');
+		}
+		sb.append(whiteToMove ? " w" : " b");
+		sb.append(" - - ").append(halfmove).append(' ').append(ply / 2 + 1);
+		return sb.toString();
+	}
+}
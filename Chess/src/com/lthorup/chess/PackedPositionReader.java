@@ -0,0 +1,55 @@
+package com.lthorup.chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+//-------------------------------------------------------
+// Streaming reader for files of packed positions written by
+// SelfPlayGenerator. Reads through a fixed size direct buffer.
+public class PackedPositionReader implements Closeable {
+
+	private FileChannel channel;
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(PackedPosition.SIZE * 32768);
+	private boolean eof = false;
+
+	//---------------------------------------------------
+	public PackedPositionReader(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		buffer.flip();   // start empty
+	}
+	//---------------------------------------------------
+	// number of positions in the file
+	public long size() throws IOException {
+		return channel.size() / PackedPosition.SIZE;
+	}
+	//---------------------------------------------------
+	// Read the next position into pos, returns false at the end of the file.
+	// Reusing one PackedPosition avoids allocating per position.
+	public boolean next(PackedPosition pos) throws IOException {
+		if (buffer.remaining() < PackedPosition.SIZE) {
+			if (eof)
+				return false;
+			buffer.compact();
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					eof = true;
+					break;
+				}
+			}
+			buffer.flip();
+			if (buffer.remaining() < PackedPosition.SIZE)
+				return false;
+		}
+		pos.read(buffer);
+		return true;
+	}
+	//---------------------------------------------------
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,86 @@
+package com.lthorup.chess;
+
+//-------------------------------------------------------
+// Pawn structure evaluation terms: doubled, isolated and passed
+// pawns. The score only depends on the pawns, so it is cached in
+// the pawn hash table by ChessBoard.
+class PawnStructure {
+
+	//---------------------------------------------------
+	// weights in centipawns, in feature order
+	static final String[] NAMES = { "doubled", "isolated", "passed" };
+	static int[] weights = { -15, -10, 20 };
+
+	//---------------------------------------------------
+	// score of the pawn structure from white's point of view
+	static int evaluate(ChessBoard board) {
+		int[] f = features(board);
+		int score = 0;
+		for (int i = 0; i < f.length; i++)
+			score += weights[i] * f[i];
+		return score;
+	}
+	//---------------------------------------------------
+	// white minus black count of each pawn structure term
+	static int[] features(ChessBoard board) {
+		int[] whiteFile = new int[8], blackFile = new int[8];
+		int[] whiteMaxY = new int[8], blackMinY = new int[8];   // most advanced opposing blocker per file
+		for (int x = 0; x < 8; x++) {
+			whiteMaxY[x] = -1;
+			blackMinY[x] = 8;
+		}
+		for (int y = 0; y < 8; y++)
+			for (int x = 0; x < 8; x++) {
+				ChessPiece piece = board.get(x, y);
+				if (piece == ChessPiece.WhitePawn) {
+					whiteFile[x]++;
+					whiteMaxY[x] = Math.max(whiteMaxY[x], y);
+				}
+				else if (piece == ChessPiece.BlackPawn) {
+					blackFile[x]++;
+					blackMinY[x] = Math.min(blackMinY[x], y);
+				}
+			}
+
+		int[] f = new int[NAMES.length];
+		for (int x = 0; x < 8; x++) {
+			// doubled: every pawn after the first on a file
+			if (whiteFile[x] > 1)
+				f[0] += whiteFile[x] - 1;
+			if (blackFile[x] > 1)
+				f[0] -= blackFile[x] - 1;
+
+			// isolated: no friendly pawns on the neighbouring files
+			boolean whiteNeighbour = (x > 0 && whiteFile[x - 1] > 0) || (x < 7 && whiteFile[x + 1] > 0);
+			boolean blackNeighbour = (x > 0 && blackFile[x - 1] > 0) || (x < 7 && blackFile[x + 1] > 0);
+			if (!whiteNeighbour)
+				f[1] += whiteFile[x];
+			if (!blackNeighbour)
+				f[1] -= blackFile[x];
+		}
+
+		// passed: no opposing pawns ahead on the same or neighbouring files
+		// (white moves toward y = 0, black toward y = 7)
+		for (int y = 0; y < 8; y++)
+			for (int x = 0; x < 8; x++) {
+				ChessPiece piece = board.get(x, y);
+				if (piece == ChessPiece.WhitePawn) {
+					boolean passed = true;
+					for (int fx = Math.max(x - 1, 0); fx <= Math.min(x + 1, 7); fx++)
+						if (blackMinY[fx] < y)
+							passed = false;
+					if (passed)
+						f[2]++;
+				}
+				else if (piece == ChessPiece.BlackPawn) {
+					boolean passed = true;
+					for (int fx = Math.max(x - 1, 0); fx <= Math.min(x + 1, 7); fx++)
+						if (whiteMaxY[fx] > y)
+							passed = false;
+					if (passed)
+						f[2]--;
+				}
+			}
+		return f;
+	}
+}
@@ -0,0 +1,33 @@
+package com.lthorup.chess;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+//-------------------------------------------------------
+// A game read from a PGN file: its tag pairs, the SAN
+// moves of the main line and the game result.
+public class PgnGame {
+
+	public LinkedHashMap<String, String> tags = new LinkedHashMap<String, String>();
+	public ArrayList<String> moves = new ArrayList<String>();
+	public String result = "*";
+
+	//---------------------------------------------------
+	// create the starting board of the game, honoring a FEN tag
+	public ChessBoard startBoard() {
+		String fen = tags.get("FEN");
+		if (fen != null)
+			return new ChessBoard(fen);
+		return new ChessBoard(ChessColor.Black);
+	}
+	//---------------------------------------------------
+	// the result as half points for white (0, 1, 2), or -1 if unknown
+	public int whiteHalfPoints() {
+		switch (result) {
+		case "1-0": return 2;
+		case "0-1": return 0;
+		case "1/2-1/2": return 1;
+		default: return -1;
+		}
+	}
+}
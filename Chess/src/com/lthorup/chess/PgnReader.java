@@ -0,0 +1,176 @@
+package com.lthorup.chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+//-------------------------------------------------------
+// Streaming PGN reader. The file is read through a fixed size
+// direct buffer one game at a time, so memory use doesn't depend
+// on the size of the file. Comments, variations and NAGs are skipped;
+// only the tags, main line SAN moves and result are kept.
+public class PgnReader implements Closeable {
+
+	final static int BUFFER_SIZE = 1 << 20;
+
+	private FileChannel channel;
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private StringBuilder token = new StringBuilder();
+	private boolean eof = false;
+
+	//---------------------------------------------------
+	public PgnReader(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		buffer.flip();   // start empty
+	}
+	//---------------------------------------------------
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+	//---------------------------------------------------
+	// read the next game, returns null at the end of the file
+	public PgnGame next() throws IOException {
+		PgnGame game = new PgnGame();
+		boolean started = false;
+		int c;
+		while ((c = peek()) >= 0) {
+			if (c == '[') {
+				// a tag after the moves starts the next game (missing result)
+				if (!game.moves.isEmpty())
+					return game;
+				read();
+				readTag(game);
+				started = true;
+			}
+			else if (c == '{') {
+				skipPast('}');
+			}
+			else if (c == ';' || c == '%') {
+				skipPast('\n');
+			}
+			else if (c == '(') {
+				skipVariation();
+			}
+			else if (c <= ' ' || c == ')' || c == '}' || c == ']') {
+				read();
+			}
+			else {
+				String t = readToken();
+				if (t.equals("1-0") || t.equals("0-1") || t.equals("1/2-1/2") || t.equals("*")) {
+					game.result = t;
+					return game;
+				}
+				if (t.charAt(0) == '$')
+					continue;
+
+				// strip move numbers ("12." "12..." or "12.e4")
+				int i = 0;
+				while (i < t.length() && Character.isDigit(t.charAt(i)))
+					i++;
+				if (i > 0 && i < t.length() && t.charAt(i) == '.') {
+					while (i < t.length() && t.charAt(i) == '.')
+						i++;
+					t = t.substring(i);
+				}
+				else if (i == t.length())
+					t = "";
+				if (!t.isEmpty() && t.charAt(0) != '.')
+					game.moves.add(t);
+				started = true;
+			}
+		}
+		return started ? game : null;
+	}
+
+	//---------------------------------------------------
+	// read a tag pair after the opening '[' like: Event "name"]
+	private void readTag(PgnGame game) throws IOException {
+		token.setLength(0);
+		int c;
+		while ((c = read()) >= 0 && c > ' ' && c != ']' && c != '"')
+			token.append((char)c);
+		String name = token.toString();
+		token.setLength(0);
+		if (c == ']')
+			return;
+		boolean quoted = (c == '"');
+		while ((c = read()) >= 0) {
+			if (c == '"') {
+				quoted = !quoted;
+				continue;
+			}
+			if (quoted && c == '\\') {
+				c = read();
+				if (c < 0)
+					break;
+			}
+			else if (!quoted && c == ']')
+				break;
+			if (quoted)
+				token.append((char)c);
+		}
+		game.tags.put(name, token.toString());
+	}
+	//---------------------------------------------------
+	private String readToken() throws IOException {
+		token.setLength(0);
+		int c;
+		while ((c = peek()) > ' ' && "{}();[]".indexOf(c) < 0) {
+			token.append((char)c);
+			read();
+		}
+		return token.toString();
+	}
+	//---------------------------------------------------
+	private void skipPast(int end) throws IOException {
+		int c;
+		while ((c = read()) >= 0 && c != end)
+			;
+	}
+	//---------------------------------------------------
+	// skip a (possibly nested) variation, including comments inside it
+	private void skipVariation() throws IOException {
+		int depth = 0;
+		int c;
+		while ((c = read()) >= 0) {
+			if (c == '(')
+				depth++;
+			else if (c == ')') {
+				if (--depth == 0)
+					return;
+			}
+			else if (c == '{')
+				skipPast('}');
+		}
+	}
+	//---------------------------------------------------
+	// byte level access to the buffered channel (PGN is ASCII/Latin-1)
+	private int peek() throws IOException {
+		if (!buffer.hasRemaining() && !fill())
+			return -1;
+		return buffer.get(buffer.position()) & 0xff;
+	}
+	private int read() throws IOException {
+		if (!buffer.hasRemaining() && !fill())
+			return -1;
+		return buffer.get() & 0xff;
+	}
+	private boolean fill() throws IOException {
+		if (eof)
+			return false;
+		buffer.clear();
+		int n;
+		while ((n = channel.read(buffer)) == 0)
+			;
+		buffer.flip();
+		if (n < 0) {
+			eof = true;
+			return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,36 @@
+package com.lthorup.chess;
+
+import java.util.Arrays;
+
+//-------------------------------------------------------
+// Stack of position keys for a game: the positions that have been
+// played followed by the positions on the current search path.
+// The last entry is the current position.
+class PositionHistory {
+
+	private long[] keys = new long[256];
+	private int size = 0;
+
+	//---------------------------------------------------
+	void push(long key) {
+		if (size == keys.length)
+			keys = Arrays.copyOf(keys, size * 2);
+		keys[size++] = key;
+	}
+	void pop() {
+		size--;
+	}
+	//---------------------------------------------------
+	// Count earlier occurrences of the current position. Only positions
+	// since the last capture or pawn move (the halfmove clock) with the
+	// same side to move can repeat, so this is a short scan.
+	int repetitions(int halfmoveClock) {
+		long key = keys[size - 1];
+		int count = 0;
+		int stop = Math.max(size - 1 - halfmoveClock, 0);
+		for (int i = size - 3; i >= stop; i -= 2)
+			if (keys[i] == key)
+				count++;
+		return count;
+	}
+}
@@ -0,0 +1,11 @@
+package com.lthorup.chess;
+
+//-------------------------------------------------------
+// A search backend that chooses the AI's moves. The game plays
+// the chosen move with ChessBoard.attemptMove, so engines don't
+// have to return a board from the game's own tree.
+public interface SearchEngine {
+
+	// the move for the player to move, or null if the game is over
+	ChessMove chooseMove(ChessBoard board);
+}
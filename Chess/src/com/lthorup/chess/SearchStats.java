@@ -0,0 +1,40 @@
+package com.lthorup.chess;
+
+import java.util.concurrent.atomic.LongAdder;
+
+//-------------------------------------------------------
+// Search counters shared by all searches. LongAdder keeps the
+// counting cheap when several threads search at once.
+public class SearchStats {
+
+	public final LongAdder nodes = new LongAdder();            // boards created by the search
+	public final LongAdder searches = new LongAdder();         // root searches
+	public final LongAdder scouts = new LongAdder();           // null window (PVS) searches
+	public final LongAdder researches = new LongAdder();       // scouts that had to be searched again
+	public final LongAdder aspirationFails = new LongAdder();  // iterations repeated with the full window
+	public final LongAdder cacheHits = new LongAdder();        // searches answered by the analysis cache
+	public final LongAdder exchangePrunes = new LongAdder();   // losing captures skipped at the frontier
+
+	//---------------------------------------------------
+	public void reset() {
+		nodes.reset();
+		searches.reset();
+		scouts.reset();
+		researches.reset();
+		aspirationFails.reset();
+		cacheHits.reset();
+		exchangePrunes.reset();
+	}
+	//---------------------------------------------------
+	// fraction of scouts that were searched again
+	public double researchRate() {
+		long s = scouts.sum();
+		return s == 0 ? 0 : (double)researches.sum() / s;
+	}
+	//---------------------------------------------------
+	@Override
+	public String toString() {
+		return String.format("%d nodes, %d searches, %d scouts, %.1f%% re-searched, %d aspiration fails, %d cache hits, %d exchange prunes",
+				nodes.sum(), searches.sum(), scouts.sum(), 100 * researchRate(), aspirationFails.sum(), cacheHits.sum(), exchangePrunes.sum());
+	}
+}
@@ -0,0 +1,168 @@
+package com.lthorup.chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+//-------------------------------------------------------
+// Opt-in recorder of search events for offline analysis with
+// TraceExplorer.
+//
+// The search thread writes fixed size events into a preallocated
+// ring buffer and a background thread writes them to a binary file,
+// so recording never allocates or blocks. If the writer falls behind
+// and the ring is full, events are dropped and counted, and a DROPPED
+// event with the count is written as soon as there is room again, so
+// readers know where the trace has a gap. Only one thread should
+// search while recording.
+//
+// Each event is two longs (big endian in the file):
+//   DROPPED: type,                           number of events dropped here
+//   ROOT:  type | maxDepth << 2,            position key
+//   ENTER: type | depth << 2 | move << 8,   alpha << 32 | beta
+//   EXIT:  type | depth << 2 | cutoff << 8, score
+// The file starts with the int magic 'TRCE' and int version 1.
+public class SearchTrace implements Closeable {
+
+	static final int MAGIC = 0x54524345;   // "TRCE"
+	static final int VERSION = 1;
+	static final int DROPPED = 0, ROOT = 1, ENTER = 2, EXIT = 3;
+
+	private final long[] ring;
+	private final int mask;
+	private final AtomicLong head = new AtomicLong();   // next event to write (search thread)
+	private final AtomicLong tail = new AtomicLong();   // next event to flush (writer thread)
+	private final AtomicLong dropped = new AtomicLong();
+	private long pending = 0;                            // dropped since the last DROPPED event (search thread)
+	private final FileChannel channel;
+	private final Thread writer;
+	private volatile boolean closing = false;
+
+	//---------------------------------------------------
+	// start recording to a file with room for the given number of buffered events
+	public SearchTrace(Path path, int events) throws IOException {
+		int capacity = Integer.highestOneBit(Math.max(events, 1024));
+		ring = new long[capacity * 2];
+		mask = capacity - 1;
+		channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		ByteBuffer header = ByteBuffer.allocate(8);
+		header.putInt(MAGIC).putInt(VERSION).flip();
+		channel.write(header);
+
+		writer = new Thread(this::writeLoop, "search trace writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	//---------------------------------------------------
+	// record the start of a root search iteration
+	void root(long key, int maxDepth) {
+		put(ROOT | (maxDepth << 2), key);
+	}
+	//---------------------------------------------------
+	// record entering a node (move is the move leading to it, may be null)
+	void enter(int depth, int alpha, int beta, ChessMove move) {
+		long m = move == null ? 0 : AnalysisCache.packMove(move);
+		put(ENTER | (depth << 2) | (m << 8), ((long)alpha << 32) | (beta & 0xffffffffL));
+	}
+	//---------------------------------------------------
+	// record leaving a node with its score and whether it cut off
+	void exit(int depth, int score, boolean cutoff) {
+		put(EXIT | (depth << 2) | (cutoff ? 1 << 8 : 0), score);
+	}
+	//---------------------------------------------------
+	// after a gap the event needs room for the DROPPED event in front of it
+	private void put(long a, long b) {
+		long h = head.get();
+		long free = mask + 1 - (h - tail.get());
+		if (free < (pending > 0 ? 2 : 1)) {
+			pending++;
+			dropped.incrementAndGet();
+			return;
+		}
+		if (pending > 0) {
+			set(h++, DROPPED, pending);
+			pending = 0;
+		}
+		set(h, a, b);
+		head.lazySet(h + 1);
+	}
+	private void set(long h, long a, long b) {
+		int i = (int)(h & mask) * 2;
+		ring[i] = a;
+		ring[i + 1] = b;
+	}
+
+	//---------------------------------------------------
+	public long dropped() {
+		return dropped.get();
+	}
+	//---------------------------------------------------
+	// stop recording and write the remaining events, call it once the search
+	// has stopped recording
+	@Override
+	public void close() throws IOException {
+		// mark a gap at the end of the trace
+		while (pending > 0 && writer.isAlive()) {
+			long h = head.get();
+			if (h - tail.get() > mask) {
+				LockSupport.parkNanos(1000000);
+				continue;
+			}
+			set(h, DROPPED, pending);
+			pending = 0;
+			head.lazySet(h + 1);
+		}
+		closing = true;
+		try {
+			writer.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+	}
+
+	//---------------------------------------------------
+	// writer thread: copy events from the ring to the file
+	private void writeLoop() {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+		try {
+			while (true) {
+				boolean last = closing;
+				long t = tail.get();
+				long h = head.get();
+				if (t == h) {
+					if (last)
+						break;
+					LockSupport.parkNanos(1000000);
+					continue;
+				}
+				for (; t < h; t++) {
+					int i = (int)(t & mask) * 2;
+					buffer.putLong(ring[i]).putLong(ring[i + 1]);
+					if (!buffer.hasRemaining()) {
+						tail.lazySet(t + 1);
+						drain(buffer);
+					}
+				}
+				tail.lazySet(t);
+				drain(buffer);
+			}
+		}
+		catch (IOException e) {
+			System.err.println("search trace stopped: " + e.getMessage());
+		}
+	}
+	private void drain(ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+}
@@ -0,0 +1,167 @@
+package com.lthorup.chess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+//-------------------------------------------------------
+// Headless self-play training data generator.
+//
+// Every core plays games against itself from randomized openings
+// with a fixed depth search and records each position after the
+// opening (except positions in check) with its search score. When a
+// game ends the result is filled in and the game's positions are
+// appended to the output as PackedPosition records.
+//
+// usage: SelfPlayGenerator <output.pack> [-games n] [-threads n] [-depth n] [-random plies] [-seed n]
+public class SelfPlayGenerator {
+
+	static final int MAX_PLIES = 400;            // longer games are scored as draws
+	static final int GAME_BYTES = MAX_PLIES * PackedPosition.SIZE;
+
+	int games = 1000;
+	int threads = Runtime.getRuntime().availableProcessors();
+	int depth = 3;
+	int randomPlies = 8;
+	long seed = System.nanoTime();
+
+	FileChannel channel;
+	AtomicInteger gamesStarted = new AtomicInteger();
+	AtomicLong positions = new AtomicLong();
+	AtomicLong[] results = { new AtomicLong(), new AtomicLong(), new AtomicLong() };
+	AtomicReference<Throwable> failure = new AtomicReference<Throwable>();   // first worker error
+
+	//---------------------------------------------------
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("usage: SelfPlayGenerator <output" + PackedPosition.EXTENSION + "> [-games n] [-threads n] [-depth n] [-random plies] [-seed n]");
+			System.exit(1);
+		}
+		EvalParams.loadDefault();
+		ChessBoard.nnue = Nnue.loadDefault();
+
+		SelfPlayGenerator generator = new SelfPlayGenerator();
+		for (int i = 1; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "-games": generator.games = Integer.parseInt(args[i + 1]); break;
+			case "-threads": generator.threads = Integer.parseInt(args[i + 1]); break;
+			case "-depth": generator.depth = Math.max(Integer.parseInt(args[i + 1]), 2); break;
+			case "-random": generator.randomPlies = Integer.parseInt(args[i + 1]); break;
+			case "-seed": generator.seed = Long.parseLong(args[i + 1]); break;
+			default:
+				System.err.println("unknown option " + args[i]);
+				System.exit(1);
+			}
+		}
+
+		long start = System.nanoTime();
+		try {
+			generator.run(args[0]);
+		}
+		catch (Exception | Error e) {
+			System.err.println("self-play failed: " + e);
+			System.exit(1);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long n = generator.positions.get();
+		System.out.printf("%d games, %d positions in %.1f s: %.0f positions/s, %.1f positions/s per core%n",
+				generator.games, n, seconds, n / seconds, n / seconds / generator.threads);
+		System.out.printf("white wins %d, draws %d, black wins %d%n",
+				generator.results[2].get(), generator.results[1].get(), generator.results[0].get());
+	}
+
+	//---------------------------------------------------
+	// Play the games on all threads. The first worker error stops the
+	// other workers and is rethrown once they have finished.
+	void run(String path) throws Exception {
+		channel = FileChannel.open(Paths.get(path), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ArrayList<Thread> workers = new ArrayList<Thread>();
+			for (int i = 0; i < threads; i++) {
+				final Random random = new Random(seed + i);
+				Thread t = new Thread(() -> worker(random));
+				t.start();
+				workers.add(t);
+			}
+			for (Thread t : workers)
+				t.join();
+		}
+		finally {
+			channel.close();
+		}
+		Throwable t = failure.get();
+		if (t instanceof Exception)
+			throw (Exception)t;
+		if (t != null)
+			throw (Error)t;
+	}
+
+	//---------------------------------------------------
+	// play games until the requested number have been started or a worker failed
+	void worker(Random random) {
+		// buffer several games before writing them out in one call
+		ByteBuffer buffer = ByteBuffer.allocateDirect(64 * GAME_BYTES);
+		try {
+			while (failure.get() == null && gamesStarted.getAndIncrement() < games) {
+				playGame(random, buffer);
+				if (buffer.remaining() < GAME_BYTES)
+					write(buffer);
+			}
+			if (failure.get() == null)
+				write(buffer);
+		}
+		catch (Throwable e) {
+			failure.compareAndSet(null, e);
+		}
+	}
+	//---------------------------------------------------
+	// play one game, appending its positions to the buffer
+	void playGame(Random random, ByteBuffer buffer) {
+		ChessBoard board = new ChessBoard(ChessColor.Black);
+		int ply = 0;
+
+		// randomize the opening
+		for (; ply < randomPlies && !board.isCheckMate(); ply++) {
+			ArrayList<ChessMove> moves = board.getValidMoves();
+			board = board.attemptMove(moves.get(random.nextInt(moves.size())));
+		}
+
+		int gameStart = buffer.position();
+		int result = 1;
+		for (; ply < MAX_PLIES; ply++) {
+			if (board.isCheckMate()) {
+				if (!board.isStaleMate())
+					result = board.sideToMove() == ChessColor.White ? 0 : 2;
+				break;
+			}
+			if (board.isDraw())
+				break;
+
+			ChessBoard next = board.aiMakeMove(depth);
+			if (!board.isCheck())
+				PackedPosition.write(buffer, board, board.searchScore(), board.halfmoveClock(), ply);
+			board = next;
+		}
+
+		for (int offset = gameStart; offset < buffer.position(); offset += PackedPosition.SIZE)
+			PackedPosition.setResult(buffer, offset, result);
+		positions.addAndGet((buffer.position() - gameStart) / PackedPosition.SIZE);
+		results[result].incrementAndGet();
+	}
+	//---------------------------------------------------
+	private void write(ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		synchronized (channel) {
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
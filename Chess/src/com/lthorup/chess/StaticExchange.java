@@ -0,0 +1,137 @@
+package com.lthorup.chess;
+
+//-------------------------------------------------------
+// Static exchange evaluation: the material won or lost by a move
+// when both sides keep capturing on its target square with their
+// least valuable attacker, each side stopping when continuing would
+// lose more. The exchange is played on a copy of the squares without
+// making moves or generating the other moves, so it is cheap enough to
+// run on every capture. Pieces behind a capturing piece (x-rays)
+// join in once it has been removed. Pins are ignored.
+class StaticExchange {
+
+	static final int KING_VALUE = 20000;   // a king can only capture last
+
+	private static final int[][] KNIGHT = { {-2, -1}, {-2, 1}, {-1, -2}, {-1, 2}, {2, -1}, {2, 1}, {1, -2}, {1, 2} };
+	private static final int[][] KING = { {-1, -1}, {1, -1}, {1, 1}, {-1, 1}, {0, -1}, {0, 1}, {1, 0}, {-1, 0} };
+	private static final int[][] DIAGONALS = { {-1, -1}, {1, -1}, {1, 1}, {-1, 1} };
+	private static final int[][] LINES = { {0, -1}, {0, 1}, {1, 0}, {-1, 0} };
+
+	//---------------------------------------------------
+	// material gain in centipawns of the move for the player making it
+	static int evaluate(ChessBoard board, ChessMove move) {
+		ChessPiece[] squares = new ChessPiece[64];
+		for (int y = 0; y < 8; y++)
+			for (int x = 0; x < 8; x++)
+				squares[y * 8 + x] = board.get(x, y);
+		int tx = move.to.x, ty = move.to.y;
+
+		int[] gain = new int[32];
+		int d = 0;
+		gain[0] = value(squares[ty * 8 + tx], ty);
+		ChessPiece attacker = squares[move.from.y * 8 + move.from.x];
+		int from = move.from.y * 8 + move.from.x;
+		ChessColor side = attacker.color();
+		do {
+			// the piece now on the square is captured in the next step
+			d++;
+			int promotion = value(attacker, ty) - value(attacker, -1);
+			gain[d - 1] += promotion;
+			gain[d] = value(attacker, ty) - gain[d - 1];
+			squares[from] = ChessPiece.Empty;
+			side = side.opposite();
+			from = leastValuableAttacker(squares, tx, ty, side);
+			attacker = from >= 0 ? squares[from] : null;
+		} while (attacker != null && d < gain.length - 1);
+
+		while (--d > 0)
+			gain[d - 1] = -Math.max(-gain[d - 1], gain[d]);
+		return gain[0];
+	}
+
+	//---------------------------------------------------
+	// value of a piece standing on row y, a pawn reaching the last row is a queen
+	private static int value(ChessPiece piece, int y) {
+		switch (piece) {
+		case Empty:
+			return 0;
+		case WhiteKing:
+		case BlackKing:
+			return KING_VALUE;
+		case WhitePawn:
+			return y == 0 ? ChessPiece.WhiteQueen.value() : piece.value();
+		case BlackPawn:
+			return y == 7 ? -ChessPiece.BlackQueen.value() : -piece.value();
+		default:
+			return Math.abs(piece.value());
+		}
+	}
+
+	//---------------------------------------------------
+	// square index of the cheapest piece of the color attacking (tx, ty), or -1
+	private static int leastValuableAttacker(ChessPiece[] squares, int tx, int ty, ChessColor color) {
+		int best = -1, bestValue = Integer.MAX_VALUE;
+
+		// pawns attack diagonally forward (white towards row 0)
+		ChessPiece pawn = color == ChessColor.White ? ChessPiece.WhitePawn : ChessPiece.BlackPawn;
+		int py = color == ChessColor.White ? ty + 1 : ty - 1;
+		for (int dx = -1; dx <= 1; dx += 2)
+			if (onBoard(tx + dx, py) && squares[py * 8 + tx + dx] == pawn)
+				return py * 8 + tx + dx;
+
+		for (int[] o : KNIGHT) {
+			int x = tx + o[0], y = ty + o[1];
+			if (onBoard(x, y) && isKnight(squares[y * 8 + x], color) && value(squares[y * 8 + x], y) < bestValue) {
+				best = y * 8 + x;
+				bestValue = value(squares[best], y);
+			}
+		}
+		for (int[][] dirs : new int[][][] { DIAGONALS, LINES })
+			for (int[] dir : dirs) {
+				int x = tx + dir[0], y = ty + dir[1];
+				while (onBoard(x, y) && squares[y * 8 + x] == ChessPiece.Empty) {
+					x += dir[0];
+					y += dir[1];
+				}
+				if (!onBoard(x, y))
+					continue;
+				ChessPiece piece = squares[y * 8 + x];
+				if (piece.color() == color && slides(piece, dirs == DIAGONALS) && value(piece, y) < bestValue) {
+					best = y * 8 + x;
+					bestValue = value(piece, y);
+				}
+			}
+		if (best >= 0)
+			return best;
+
+		ChessPiece king = color == ChessColor.White ? ChessPiece.WhiteKing : ChessPiece.BlackKing;
+		for (int[] o : KING) {
+			int x = tx + o[0], y = ty + o[1];
+			if (onBoard(x, y) && squares[y * 8 + x] == king)
+				return y * 8 + x;
+		}
+		return -1;
+	}
+	private static boolean onBoard(int x, int y) {
+		return x >= 0 && x < 8 && y >= 0 && y < 8;
+	}
+	private static boolean isKnight(ChessPiece piece, ChessColor color) {
+		return piece == (color == ChessColor.White ? ChessPiece.WhiteKnight : ChessPiece.BlackKnight);
+	}
+	// true if the piece moves any distance in the given kind of direction
+	private static boolean slides(ChessPiece piece, boolean diagonal) {
+		switch (piece) {
+		case WhiteQueen:
+		case BlackQueen:
+			return true;
+		case WhiteBishop:
+		case BlackBishop:
+			return diagonal;
+		case WhiteRook:
+		case BlackRook:
+			return !diagonal;
+		default:
+			return false;
+		}
+	}
+}
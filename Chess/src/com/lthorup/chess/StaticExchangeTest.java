@@ -0,0 +1,62 @@
+package com.lthorup.chess;
+
+//-------------------------------------------------------
+// Command line check of StaticExchange against hand worked exchanges.
+//
+// Each case is a position, a move in SAN and the expected material
+// gain for the player making it, with the built in piece values
+// (pawn 100, knight, bishop and rook 500, queen 1000), so it doesn't
+// load a parameter file. Prints every case and exits with status 1
+// if any of them doesn't match.
+//
+// usage: StaticExchangeTest
+public class StaticExchangeTest {
+
+	static final String[][] CASES = {
+		// undefended and defended captures
+		{ "4k3/8/8/3p4/8/8/8/3QK3 w - - 0 1",     "Qxd5",   "100" },
+		{ "4k3/8/4p3/3p4/8/8/8/3QK3 w - - 0 1",   "Qxd5",   "-900" },
+		{ "4k3/8/4p3/3n4/4P3/8/8/4K3 w - - 0 1",  "exd5",   "400" },
+		{ "4k3/8/5n2/3p4/8/1B6/8/4K3 w - - 0 1",  "Bxd5",   "-400" },
+		{ "3qk3/8/8/3P4/8/8/8/4K3 b - - 0 1",     "Qxd5",   "100" },
+		{ "3qk3/8/8/3P4/4P3/8/8/4K3 b - - 0 1",   "Qxd5",   "-900" },
+		// recapture chains
+		{ "4k3/8/4p3/3p4/8/8/3R4/3RK3 w - - 0 1", "Rxd5",   "-300" },
+		{ "4k3/8/5n2/3p4/8/1B6/8/3RK3 w - - 0 1", "Bxd5",   "100" },
+		{ "4k3/4r3/8/4p3/8/8/4R3/4K3 w - - 0 1",  "Rxe5+",  "-400" },
+		// x-ray: the rook behind the rook joins the exchange
+		{ "4k3/3r4/8/3p4/8/8/3R4/3QK3 w - - 0 1", "Rxd5",   "100" },
+		// the king captures last, and only onto an undefended square
+		{ "4k3/8/8/8/8/1n2K3/3p4/3R4 w - - 0 1",  "Rxd2",   "100" },
+		{ "4k3/8/8/8/3r4/1n2K3/3p4/3R4 w - - 0 1", "Rxd2",  "-400" },
+		{ "3r4/3P4/1N2k3/8/8/8/8/4K3 b - - 0 1",  "Rxd7",   "100" },
+		{ "3r4/3P4/1N2k3/8/8/8/8/3RK3 b - - 0 1", "Rxd7",   "-400" },
+		// promotion captures
+		{ "1r2k3/P7/8/8/8/8/8/4K3 w - - 0 1",     "axb8=Q", "1400" },
+		{ "4k3/8/8/8/8/8/p7/1R2K3 b - - 0 1",     "axb1=Q", "1400" },
+		// a quiet move
+		{ "4k3/8/8/3p4/8/8/8/3K4 w - - 0 1",      "Kd2",    "0" },
+	};
+
+	//---------------------------------------------------
+	public static void main(String[] args) {
+		int failures = 0;
+		for (String[] c : CASES) {
+			ChessBoard board = new ChessBoard(c[0]);
+			ChessMove move = ChessNotation.parseSan(board, c[1]);
+			if (move == null) {
+				System.out.printf("FAIL  %-7s illegal move in %s%n", c[1], c[0]);
+				failures++;
+				continue;
+			}
+			int expected = Integer.parseInt(c[2]);
+			int value = StaticExchange.evaluate(board, move);
+			if (value != expected)
+				failures++;
+			System.out.printf("%s  %-7s %6d  expected %6d  %s%n", value == expected ? "ok  " : "FAIL", c[1], value, expected, c[0]);
+		}
+		System.out.printf("%d cases, %d failures%n", CASES.length, failures);
+		if (failures > 0)
+			System.exit(1);
+	}
+}
@@ -0,0 +1,218 @@
+package com.lthorup.chess;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+//-------------------------------------------------------
+// Command line tool for search trace files written by SearchTrace.
+//
+// Rebuilds the search trees from the enter/exit events without
+// keeping them in memory, and reports:
+//   - each root search iteration: nodes, cutoff rate and the root
+//     move whose subtree took the most nodes. Iterations where the
+//     recorder dropped events are flagged, their counts only cover
+//     the events before the gap.
+//   - the largest searches
+//   - the hottest subtrees (most nodes) down to a given ply
+// and can export the per search summary as CSV.
+//
+// usage: TraceExplorer <trace file> [-top n] [-ply n] [-csv file]
+public class TraceExplorer {
+
+	int top = 10;
+	int maxPly = 3;   // deepest subtree root reported as a hot subtree
+
+	//---------------------------------------------------
+	// a node on the path being rebuilt
+	static class Frame {
+		String move;
+		int alpha, beta;
+		long nodes = 1;
+	}
+	//---------------------------------------------------
+	// summary of one root search iteration
+	static class Search {
+		int index;
+		long key;
+		int maxDepth;
+		long nodes, cutoffs;
+		long dropped;   // events lost to a full ring, the rest of the search is skipped
+		HashMap<String, Long> rootMoves = new HashMap<String, Long>();
+		String hottestMove() {
+			String best = "-";
+			long most = -1;
+			for (String m : rootMoves.keySet())
+				if (rootMoves.get(m) > most) {
+					most = rootMoves.get(m);
+					best = m;
+				}
+			return best;
+		}
+	}
+	//---------------------------------------------------
+	static class Subtree {
+		final int search;
+		final String path;
+		final long nodes;
+		final int score, alpha, beta;
+		Subtree(int search, String path, long nodes, int score, int alpha, int beta) {
+			this.search = search; this.path = path; this.nodes = nodes; this.score = score; this.alpha = alpha; this.beta = beta;
+		}
+	}
+
+	ArrayList<Search> searches = new ArrayList<Search>();
+	PriorityQueue<Subtree> hottest = new PriorityQueue<Subtree>((a, b) -> Long.compare(a.nodes, b.nodes));
+	long unmatched = 0;
+	long dropped = 0, skipped = 0;
+
+	//---------------------------------------------------
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: TraceExplorer <trace file> [-top n] [-ply n] [-csv file]");
+			System.exit(1);
+		}
+		TraceExplorer explorer = new TraceExplorer();
+		String csv = null;
+		for (int i = 1; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "-top": explorer.top = Integer.parseInt(args[i + 1]); break;
+			case "-ply": explorer.maxPly = Integer.parseInt(args[i + 1]); break;
+			case "-csv": csv = args[i + 1]; break;
+			default:
+				System.err.println("unknown option " + args[i]);
+				System.exit(1);
+			}
+		}
+		explorer.read(args[0]);
+		explorer.report();
+		if (csv != null)
+			explorer.exportCsv(csv);
+	}
+
+	//---------------------------------------------------
+	void read(String path) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 16))) {
+			if (in.readInt() != SearchTrace.MAGIC || in.readInt() != SearchTrace.VERSION)
+				throw new IOException(path + " is not a search trace");
+
+			ArrayList<Frame> stack = new ArrayList<Frame>();
+			Search search = null;
+			boolean gap = false;   // events were dropped since the last root event
+			while (true) {
+				long a, b;
+				try {
+					a = in.readLong();
+					b = in.readLong();
+				}
+				catch (EOFException e) {
+					break;
+				}
+				int type = (int)(a & 3);
+				if (type == SearchTrace.DROPPED) {
+					// the tree can't be rebuilt across a gap, skip to the next root search
+					dropped += b;
+					if (search != null)
+						search.dropped += b;
+					stack.clear();
+					gap = true;
+				}
+				else if (type == SearchTrace.ROOT) {
+					unmatched += stack.size();
+					stack.clear();
+					gap = false;
+					search = new Search();
+					search.index = searches.size();
+					search.key = b;
+					search.maxDepth = (int)(a >> 2) & 0x3f;
+					searches.add(search);
+				}
+				else if (gap)
+					skipped++;
+				else if (type == SearchTrace.ENTER) {
+					Frame f = new Frame();
+					ChessMove m = AnalysisCache.unpackMove((int)(a >> 8) & 0xffff);
+					f.move = m == null ? "?" : ChessNotation.square(m.from) + ChessNotation.square(m.to);
+					f.alpha = (int)(b >> 32);
+					f.beta = (int)b;
+					stack.add(f);
+				}
+				else if (type == SearchTrace.EXIT) {
+					if (stack.isEmpty() || search == null) {
+						unmatched++;
+						continue;
+					}
+					Frame f = stack.remove(stack.size() - 1);
+					boolean cutoff = ((a >> 8) & 1) != 0;
+					search.nodes++;
+					if (cutoff)
+						search.cutoffs++;
+					if (stack.isEmpty())
+						search.rootMoves.merge(f.move, f.nodes, Long::sum);
+					else
+						stack.get(stack.size() - 1).nodes += f.nodes;
+					if (stack.size() < maxPly)
+						offer(new Subtree(search.index, path(stack, f), f.nodes, (int)b, f.alpha, f.beta));
+				}
+			}
+			unmatched += stack.size();
+		}
+	}
+	//---------------------------------------------------
+	private void offer(Subtree s) {
+		hottest.add(s);
+		if (hottest.size() > top)
+			hottest.poll();
+	}
+	private static String path(ArrayList<Frame> stack, Frame last) {
+		StringBuilder sb = new StringBuilder();
+		for (Frame f : stack)
+			sb.append(f.move).append(' ');
+		return sb.append(last.move).toString();
+	}
+
+	//---------------------------------------------------
+	void report() {
+		long nodes = 0;
+		for (Search s : searches)
+			nodes += s.nodes;
+		System.out.printf("%d root search iterations, %d nodes%n", searches.size(), nodes);
+		if (unmatched > 0)
+			System.out.printf("%d unmatched events (truncated trace)%n", unmatched);
+		if (dropped > 0)
+			System.out.printf("%d events dropped by the recorder, %d events skipped until the next root search%n", dropped, skipped);
+
+		ArrayList<Search> largest = new ArrayList<Search>(searches);
+		largest.sort((a, b) -> Long.compare(b.nodes, a.nodes));
+		System.out.printf("%nlargest searches:%n");
+		for (int i = 0; i < Math.min(top, largest.size()); i++)
+			print(largest.get(i));
+
+		ArrayList<Subtree> hot = new ArrayList<Subtree>(hottest);
+		hot.sort((a, b) -> Long.compare(b.nodes, a.nodes));
+		System.out.printf("%nhottest subtrees (to ply %d):%n", maxPly);
+		for (Subtree s : hot)
+			System.out.printf("  search %d  %10d nodes  score %d  window [%d, %d]  %s%n", s.search, s.nodes, s.score, s.alpha, s.beta, s.path);
+	}
+	private void print(Search s) {
+		System.out.printf("  search %d  key %016x  depth %d  %10d nodes  %.1f%% cutoffs  hottest root move %s%s%n",
+				s.index, s.key, s.maxDepth, s.nodes, s.nodes == 0 ? 0 : 100.0 * s.cutoffs / s.nodes, s.hottestMove(),
+				s.dropped > 0 ? "  (incomplete, " + s.dropped + " events dropped)" : "");
+	}
+	//---------------------------------------------------
+	void exportCsv(String path) throws IOException {
+		try (PrintWriter out = new PrintWriter(path, "US-ASCII")) {
+			out.println("search,key,depth,nodes,cutoffs,hottest_move,hottest_nodes,dropped");
+			for (Search s : searches) {
+				String m = s.hottestMove();
+				out.printf("%d,%016x,%d,%d,%d,%s,%d,%d%n", s.index, s.key, s.maxDepth, s.nodes, s.cutoffs, m, s.rootMoves.getOrDefault(m, 0L), s.dropped);
+			}
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package com.lthorup.chess;
+
+import java.util.Random;
+
+//-------------------------------------------------------
+// Zobrist hash keys used to identify board positions.
+// Empty squares hash to zero so a position's key is the XOR of
+// the keys of its pieces, plus the side key when black is to move.
+class Zobrist {
+
+	static final long SIDE;
+	private static final long[][] pieceKeys = new long[ChessPiece.values().length][64];
+
+	static {
+		// fixed seed so keys are stable across runs (they are stored on disk)
+		Random random = new Random(0x2545F4914F6CDD1DL);
+		for (ChessPiece piece : ChessPiece.values())
+			if (piece != ChessPiece.Empty)
+				for (int i = 0; i < 64; i++)
+					pieceKeys[piece.ordinal()][i] = random.nextLong();
+		SIDE = random.nextLong();
+	}
+
+	//---------------------------------------------------
+	// key for a piece on a square
+	static long piece(ChessPiece piece, int x, int y) {
+		return pieceKeys[piece.ordinal()][y * 8 + x];
+	}
+	static long piece(ChessPiece piece, ChessLocation loc) {
+		return pieceKeys[piece.ordinal()][loc.y * 8 + loc.x];
+	}
+	//---------------------------------------------------
+	// key for a piece on a square in the pawn only key (zero if not a pawn)
+	static long pawn(ChessPiece piece, ChessLocation loc) {
+		if (piece != ChessPiece.WhitePawn && piece != ChessPiece.BlackPawn)
+			return 0;
+		return piece(piece, loc);
+	}
+	//---------------------------------------------------
+	// compute the pawn only key of a board from scratch
+	static long pawnHash(ChessBoard board) {
+		long h = 0;
+		for (int y = 0; y < 8; y++)
+			for (int x = 0; x < 8; x++) {
+				ChessPiece piece = board.get(x, y);
+				if (piece == ChessPiece.WhitePawn || piece == ChessPiece.BlackPawn)
+					h ^= piece(piece, x, y);
+			}
+		return h;
+	}
+	//---------------------------------------------------
+	// compute the full key of a board from scratch
+	static long hash(ChessBoard board) {
+		long h = 0;
+		for (int y = 0; y < 8; y++)
+			for (int x = 0; x < 8; x++)
+				h ^= piece(board.get(x, y), x, y);
+		if (board.sideToMove() == ChessColor.Black)
+			h ^= SIDE;
+		return h;
+	}
+}